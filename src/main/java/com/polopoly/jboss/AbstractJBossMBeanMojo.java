@@ -1,7 +1,10 @@
 package com.polopoly.jboss;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.HttpURLConnection;
@@ -25,7 +28,8 @@ public abstract class AbstractJBossMBeanMojo
     extends AbstractJBossMojo
 {
     /**
-     * Maximum number of retries to get JBoss JMX MBean connection.
+     * Maximum number of retries to get JBoss JMX MBean connection. Together with <code>retryWait</code> this
+     * gives the time, in seconds, any wait for JBoss or ADM is allowed to take.
      *
      * @parameter default-value="60" expression="${jboss.retry}"
      */
@@ -38,6 +42,35 @@ public abstract class AbstractJBossMBeanMojo
      */
     protected int retryWait;
 
+    /**
+     * Milliseconds before the first retry of any wait, the interval then doubles up to
+     * <code>waitMaxInterval</code>.
+     *
+     * @parameter default-value="50" expression="${jboss.waitInitialInterval}"
+     */
+    protected long waitInitialInterval;
+
+    /**
+     * The longest interval, in milliseconds, between two retries of any wait.
+     *
+     * @parameter default-value="1000" expression="${jboss.waitMaxInterval}"
+     */
+    protected long waitMaxInterval;
+
+    /**
+     * Milliseconds any JMX call may take before the server is considered unresponsive, 0 waits forever.
+     *
+     * @parameter default-value="30000" expression="${jboss.jmxTimeout}"
+     */
+    protected long jmxTimeout;
+
+    /**
+     * Milliseconds a JMX deployment operation, <code>redeploy</code> or a deployment scan, may take.
+     *
+     * @parameter default-value="600000" expression="${jboss.jmxDeployTimeout}"
+     */
+    protected long jmxDeployTimeout;
+
     /**
      * The port for the naming service.
      *
@@ -59,66 +92,237 @@ public abstract class AbstractJBossMBeanMojo
      */
     protected String admPort;
 
-    private volatile MBeanServerConnection _connection;
+    /**
+     * Whether <code>namingPort</code> and <code>admPort</code> are final, see {@link #settlePorts()}.
+     */
+    protected boolean portsSettled;
 
+    /**
+     * Get a JBoss JMX MBean connection, reusing the one already made by any goal of this build when it still
+     * answers, see {@link MBeanConnections}.
+     */
     public MBeanServerConnection connect(final boolean canBeStopped)
         throws MojoExecutionException
     {
-        if (_connection != null) {
-            return _connection;
+        settlePorts();
+        return connect(namingPort, canBeStopped);
+    }
+
+    /**
+     * Get a JBoss JMX MBean connection to the server whose naming service listens on <code>port</code>.
+     */
+    protected MBeanServerConnection connect(final String port, final boolean canBeStopped)
+        throws MojoExecutionException
+    {
+        return connect(port, canBeStopped, waiter());
+    }
+
+    /**
+     * Get a JBoss JMX MBean connection to the server whose naming service listens on <code>port</code>, waiting
+     * for it as long as <code>waiter</code> allows.
+     */
+    protected MBeanServerConnection connect(final String port, final boolean canBeStopped, final Waiter waiter)
+        throws MojoExecutionException
+    {
+        final String key = MBeanConnections.key(getAddress(), port, getUsername(), getPassword());
+        final MBeanServerConnection cached = MBeanConnections.get(key, jmxTimeout);
+        if (cached != null) {
+            debug("Reusing JBoss JMX MBean connection to " + getAddress() + ":" + port);
+            return cached;
         }
 
         info("Waiting to retrieve JBoss JMX MBean connection... ");
-        InitialContext ctx = null;
+        final InitialContext ctx;
         try {
-            ctx = getInitialContext();
+            ctx = getInitialContext(port);
         } catch (MojoExecutionException e) {
             e.printStackTrace();
             throw e;
         }
 
-        // Try to get JBoss jmx MBean connection
-        MBeanServerConnection server = null;
-        NamingException ne = null;
-
-        for (int i = 0; i < retry; ++i) {
-            try {
-                server = (MBeanServerConnection) ctx.lookup("jmx/invoker/RMIAdaptor");
-                break;
-            }
-            catch (NamingException e) {
-                ne = e;
-                info("Waiting to retrieve JBoss JMX MBean connection... ");
-                if (!canBeStopped && isNamingPortFree()) {
+        // Try to get JBoss jmx MBean connection, probing the naming port before doing the JNDI lookup
+        final NamingException[] lastFailure = new NamingException[1];
+        final MBeanServerConnection server = waiter.poll("JBoss JMX MBean connection", () -> {
+            if (!isPortInUse(port)) {
+                if (!canBeStopped) {
                     warn("JBoss does not seems to be up anymore.");
-                    break;
+                    throw new MojoExecutionException("Unable to get JBoss JMX MBean connection: nothing listens on port "
+                                                     + port);
                 }
+                return null;
+            }
+            try {
+                return (MBeanServerConnection) ctx.lookup("jmx/invoker/RMIAdaptor");
+            } catch (NamingException e) {
+                lastFailure[0] = e;
+                return null;
             }
+        });
 
-            sleep("Thread interrupted while waiting for MBean connection");
+        if (server == null) {
+            final NamingException ne = lastFailure[0];
+            throw new MojoExecutionException("Unable to get JBoss JMX MBean connection"
+                                             + (ne != null ? ": " + ne.getMessage() : ""), ne);
         }
 
-        if (server == null && ne != null) {
-            throw new MojoExecutionException("Unable to get JBoss JMX MBean connection: " + ne.getMessage(), ne);
+        MBeanConnections.put(key, server);
+
+        return server;
+    }
+
+    /**
+     * Get the operations of the server behind {@link #connect(boolean)}, with the configured JMX timeouts.
+     */
+    protected JBossOperations operations(final boolean canBeStopped) throws MojoExecutionException {
+        settlePorts();
+        return operations(namingPort, canBeStopped);
+    }
+
+    /**
+     * Where jboss:start records the ports of a server it started with a port offset, or null if this goal has
+     * nowhere to look.
+     */
+    protected File portsFile() {
+        return null;
+    }
+
+    /**
+     * Use the ports jboss:start recorded in {@link #portsFile()}, if any, instead of the configured
+     * <code>namingPort</code> and <code>admPort</code>, so every goal reaches the server that was started with a
+     * port offset. Done once, on the first use of either port.
+     */
+    protected synchronized void settlePorts() {
+        if (portsSettled) {
+            return;
+        }
+        portsSettled = true;
+        final Properties recorded = loadPorts();
+        if (recorded != null) {
+            namingPort = recorded.getProperty("namingPort");
+            admPort = recorded.getProperty("admPort");
+            debug("Using the recorded ports: naming port %s, ADM port %s", namingPort, admPort);
+        }
+    }
+
+    /**
+     * Read the ports recorded in {@link #portsFile()}.
+     * @return the recorded <code>portOffset</code>, <code>namingPort</code> and <code>admPort</code>, or null if
+     *         none are recorded
+     */
+    protected Properties loadPorts() {
+        final File file = portsFile();
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            warn("Ignoring unreadable %s: %s", file, e.getMessage());
+            return null;
         }
+        return properties.getProperty("portOffset") != null && properties.getProperty("namingPort") != null
+               && properties.getProperty("admPort") != null ? properties : null;
+    }
 
-        _connection = server;
+    /**
+     * Get the operations of the server whose naming service listens on <code>port</code>, running on threads of
+     * that server's own, see {@link AsyncJBossOperations}.
+     */
+    protected JBossOperations operations(final String port, final boolean canBeStopped)
+        throws MojoExecutionException
+    {
+        return operations(port, canBeStopped, waiter());
+    }
 
-        return server;
+    /**
+     * Get the operations of the server whose naming service listens on <code>port</code>, waiting for its
+     * connection as long as <code>waiter</code> allows.
+     */
+    protected JBossOperations operations(final String port, final boolean canBeStopped, final Waiter waiter)
+        throws MojoExecutionException
+    {
+        final MBeanServerConnection server = connect(port, canBeStopped, waiter);
+        final String key = MBeanConnections.key(getAddress(), port, getUsername(), getPassword());
+        return new JBossOperations(new AsyncJBossOperations(server, key)
+                                       .setDefaultTimeout(jmxTimeout)
+                                       .setTimeout("redeploy", jmxDeployTimeout)
+                                       .setTimeout("scan", jmxDeployTimeout));
+    }
+
+    /**
+     * Forget the shared connection to this server, to be called once it has been stopped.
+     */
+    protected void evictConnection() {
+        settlePorts();
+        evictConnection(namingPort);
     }
 
     /**
-     * Determine whether <code>namingPort</code> is free.
+     * Forget the shared connection to the server whose naming service listens on <code>port</code>.
+     */
+    protected void evictConnection(final String port) {
+        MBeanConnections.evict(getAddress(), port);
+    }
+
+    /**
+     * Create a waiter whose deadline is <code>retry</code> * <code>retryWait</code> seconds from now.
      * @return
      */
-    protected boolean isNamingPortFree()
+    protected Waiter waiter() {
+        return waiter(retry * retryWait * 1000L);
+    }
+
+    /**
+     * A waiter like {@link #waiter()} that gives up after <code>timeoutMillis</code>, for a wait that is part
+     * of a longer one.
+     */
+    protected Waiter waiter(final long timeoutMillis) {
+        return new Waiter(getLog(), timeoutMillis, waitInitialInterval, waitMaxInterval)
+            .abortOn(this::checkForFailures);
+    }
+
+    /**
+     * Checked before every attempt of every wait, throw to abort the wait because it can no longer succeed.
+     * @throws MojoExecutionException
+     */
+    protected void checkForFailures()
+        throws MojoExecutionException
     {
-        debug("Checking " + getAddress() + " on port " + namingPort);
-        try (Socket ignore = new Socket(getAddress(), new Integer(namingPort))) {
-            debug("Free");
+    }
+
+    /**
+     * Wait for <code>condition</code>, see {@link #waiter()}.
+     * @return false if it timed out
+     * @throws MojoExecutionException
+     */
+    protected boolean waitUntil(String what, Waiter.Condition condition) throws MojoExecutionException {
+        return waiter().until(what, condition);
+    }
+
+    /**
+     * Determine whether something is listening on <code>namingPort</code>.
+     * @return
+     */
+    protected boolean isNamingPortInUse()
+    {
+        settlePorts();
+        return isPortInUse(namingPort);
+    }
+
+    /**
+     * Determine whether something is listening on <code>port</code>, a cheap probe to make before any JNDI,
+     * RMI or HTTP call.
+     * @return
+     */
+    protected boolean isPortInUse(String port)
+    {
+        debug("Checking " + getAddress() + " on port " + port);
+        try (Socket socket = new Socket(getAddress(), Integer.parseInt(port))) {
+            debug("In use, connected to %s", socket.getRemoteSocketAddress());
             return true;
         } catch (IOException e) {
-            debug("Not free: " + e.getMessage());
+            debug("Not in use: " + e.getMessage());
             return false;
         }
     }
@@ -128,6 +332,7 @@ public abstract class AbstractJBossMBeanMojo
      * @return
      */
     protected boolean isAdmPortRunning() {
+        settlePorts();
         try {
             final URL url = new URL(String.format("http://%s:%s/internal/running", getAddress(), admPort));
             info("Checking " + url);
@@ -184,12 +389,25 @@ public abstract class AbstractJBossMBeanMojo
      */
     protected InitialContext getInitialContext()
         throws MojoExecutionException
+    {
+        settlePorts();
+        return getInitialContext(namingPort);
+    }
+
+    /**
+     * Set up the context information for connecting to the jboss server listening on <code>port</code>.
+     *
+     * @return
+     * @throws MojoExecutionException
+     */
+    protected InitialContext getInitialContext(final String port)
+        throws MojoExecutionException
     {
         Properties env = new Properties();
 
         env.put(Context.INITIAL_CONTEXT_FACTORY, "org.jnp.interfaces.NamingContextFactory");
         env.put(Context.URL_PKG_PREFIXES, "org.jboss.naming:org.jnp.interfaces");
-        env.put(Context.PROVIDER_URL, getAddress() + ":" + namingPort);
+        env.put(Context.PROVIDER_URL, getAddress() + ":" + port);
         env.put(NamingContext.JNP_DISABLE_DISCOVERY, "true");
 
         String username = getUsername();
@@ -206,14 +424,6 @@ public abstract class AbstractJBossMBeanMojo
         }
     }
 
-    protected void sleep(String interruptedMessage) {
-        try {
-            Thread.sleep(retryWait * 1000L);
-        } catch (InterruptedException e) {
-            warn(interruptedMessage + "\n" + e.getMessage());
-        }
-    }
-
     protected boolean isWindows() {
         final String osName = System.getProperty("os.name");
         return osName.startsWith("Windows");
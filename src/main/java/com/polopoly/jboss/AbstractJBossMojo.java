@@ -1,10 +1,24 @@
 package com.polopoly.jboss;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.manager.WagonManager;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -46,12 +60,34 @@ public abstract class AbstractJBossMojo extends AbstractMojo {
       */
     private MavenProject project;
 
+    /**
+     * The Maven session, which scopes the resolutions shared by all goals.
+     *
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private MavenSession session;
+
     /** @component */
     private ArtifactResolver resolver;
 
     /** @component */
     private ArtifactFactory factory;
 
+    /**
+     * The number of artifacts resolved concurrently. The default, 1, resolves on the calling thread: the Maven 2
+     * artifact resolver and wagon manager are not thread safe, only raise it with a resolver that is.
+     *
+     * @parameter default-value="1" expression="${jboss.resolveThreads}"
+     */
+    protected int resolveThreads;
+
+    /**
+     * Resolutions by Maven session. Plugin classes may outlive a build (embedded Maven, mvnd), so the state is
+     * kept per session, and weakly so that it goes with the session.
+     */
+    private static final Map<Object, Resolutions> SESSIONS = new WeakHashMap<>();
+
     /**
      * Create Artifact object and make sure it is locally available.
      * @param artifact
@@ -69,22 +105,137 @@ public abstract class AbstractJBossMojo extends AbstractMojo {
      * @throws MojoExecutionException
      */
     protected Artifact[] resolveArtifacts(ArtifactData[] artifacts) throws MojoExecutionException {
+        List<Future<Artifact>> futures = new ArrayList<>(artifacts.length);
+        for (ArtifactData artifact : artifacts) {
+            futures.add(resolveAsync(artifact));
+        }
         Artifact[] mavenArtifacts = new Artifact[artifacts.length];
         for (int i = 0; i < artifacts.length; i++) {
-            Artifact mavenArtifact =
-                mavenArtifacts[i] =
-                        factory.createArtifactWithClassifier(artifacts[i].groupId,
-                                                             artifacts[i].artifactId,
-                                                             artifacts[i].version,
-                                                             artifacts[i].type,
-                                                             artifacts[i].classifier);
+            mavenArtifacts[i] = await(futures.get(i));
+        }
+        return mavenArtifacts;
+    }
+
+    /**
+     * Start resolving everything this goal will need, see {@link #collectArtifacts(List)}, so that later calls
+     * to {@link #resolveArtifacts(ArtifactData[])} find the artifacts already resolved.
+     */
+    protected void prefetchArtifacts() {
+        List<ArtifactData> artifacts = new ArrayList<>();
+        collectArtifacts(artifacts);
+        for (ArtifactData artifact : artifacts) {
+            if (artifact != null) {
+                resolveAsync(artifact);
+            }
+        }
+    }
+
+    /**
+     * Add the artifacts this goal will resolve to <code>artifacts</code>.
+     * @param artifacts
+     */
+    protected void collectArtifacts(List<ArtifactData> artifacts) {
+    }
+
+    /**
+     * Resolve an artifact on the resolver pool, each coordinate is only resolved once per Maven session.
+     * @param artifact
+     * @return
+     */
+    protected Future<Artifact> resolveAsync(final ArtifactData artifact) {
+        final String key = localRepository.getBasedir() + "|" + artifact.groupId + ":" + artifact.artifactId + ":"
+            + artifact.type + ":" + artifact.classifier + ":" + artifact.version;
+        final Resolutions resolutions = resolutions();
+        final ConcurrentMap<String, Future<Artifact>> resolved = resolutions.resolved;
+        Future<Artifact> future = resolved.get(key);
+        if (future != null) {
+            return future;
+        }
+        FutureTask<Artifact> task = new FutureTask<>(() -> {
             try {
-                resolver.resolve(mavenArtifact, project.getRemoteArtifactRepositories(), localRepository);
-            } catch (Exception e) {
-                throw new MojoExecutionException("Unable to resolve artifact", e);
+                return doResolve(artifact);
+            } catch (MojoExecutionException e) {
+                resolved.remove(key);
+                throw e;
             }
+        });
+        future = resolved.putIfAbsent(key, task);
+        if (future != null) {
+            return future;
+        }
+        ExecutorService pool = resolutions.pool;
+        if (pool != null) {
+            pool.execute(task);
+        } else {
+            task.run();
+        }
+        return task;
+    }
+
+    private Artifact doResolve(ArtifactData artifact) throws MojoExecutionException {
+        debug("Resolving " + artifact);
+        Artifact mavenArtifact = factory.createArtifactWithClassifier(artifact.groupId,
+                                                                      artifact.artifactId,
+                                                                      artifact.version,
+                                                                      artifact.type,
+                                                                      artifact.classifier);
+        try {
+            resolver.resolve(mavenArtifact, project.getRemoteArtifactRepositories(), localRepository);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Unable to resolve artifact", e);
+        }
+        return mavenArtifact;
+    }
+
+    private Resolutions resolutions() {
+        synchronized (SESSIONS) {
+            // Without a session (a mojo run outside of Maven) the resolutions are this mojo's own
+            return SESSIONS.computeIfAbsent(session != null ? session : this, s -> new Resolutions(resolveThreads));
+        }
+    }
+
+    /**
+     * The resolutions of one Maven session and the pool they run on, null to resolve on the calling thread.
+     */
+    private static final class Resolutions {
+        final ConcurrentMap<String, Future<Artifact>> resolved = new ConcurrentHashMap<>();
+        final ExecutorService pool;
+
+        Resolutions(final int threads) {
+            if (threads > 1) {
+                // Let idle threads go, so nothing outlives the session
+                final ThreadPoolExecutor executor = (ThreadPoolExecutor) Threads.newPool("resolver", threads);
+                executor.setKeepAliveTime(5, TimeUnit.SECONDS);
+                executor.allowCoreThreadTimeOut(true);
+                this.pool = executor;
+            } else {
+                this.pool = null;
+            }
+        }
+    }
+
+    /**
+     * Wait for a background task, rethrowing its failure as a mojo exception.
+     * @param future
+     * @return
+     * @throws MojoExecutionException
+     */
+    protected static <T> T await(Future<T> future) throws MojoExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new MojoExecutionException(cause.getMessage(), cause);
         }
-        return mavenArtifacts;
     }
 
     /**
@@ -135,6 +286,13 @@ public abstract class AbstractJBossMojo extends AbstractMojo {
         return null;
     }
 
+    /**
+     * @return the project being built
+     */
+    protected MavenProject getProject() {
+        return project;
+    }
+
     protected void debug(String format, Object... args) {
         String message = args.length == 0 ? "[JBOSS] " + format : String.format("[JBOSS] " + format, args);
         getLog().debug(message);
@@ -11,10 +11,25 @@ public class ArtifactDeployData extends ArtifactData {
 
     public String name;
 
+    /**
+     * Whether the deployment needs ADM Content Services to be running. When JBoss and ADM are started in
+     * parallel, deployments that don't are deployed as soon as JBoss alone is ready.
+     */
+    public boolean requiresAdm = true;
+
+    /**
+     * Deployments are deployed group by group in ascending order, each group waiting for the previous one to be
+     * deployed. Deployments within a group are deployed concurrently when the <code>deployThreads</code> of the
+     * goal is above 1, in declaration order otherwise.
+     */
+    public int deployGroup;
+
     @Override
     public String toString() {
         return new StringJoiner(", ", ArtifactDeployData.class.getSimpleName() + "[", "]")
             .add("name='" + name + "'")
+            .add("requiresAdm=" + requiresAdm)
+            .add("deployGroup=" + deployGroup)
             .add("groupId='" + groupId + "'")
             .add("artifactId='" + artifactId + "'")
             .add("version='" + version + "'")
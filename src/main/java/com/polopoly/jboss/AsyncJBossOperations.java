@@ -0,0 +1,181 @@
+package com.polopoly.jboss;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Non blocking access to the JBoss MBeans.
+ *
+ * Every call runs on a thread of its server connection's executor and completes exceptionally with a
+ * {@link TimeoutException} when the server does not answer within the timeout of its operation, so a half-dead
+ * server can never hang the build. Calls are never queued: the executor starts a thread per concurrent call, up
+ * to {@link #MAX_THREADS_PER_CONNECTION}, so the timeout is only ever spent on the call itself. The remote call
+ * may keep its thread busy until the socket gives up, the caller is released regardless; as each connection has
+ * its own threads, that can only ever hold up calls to the same server.
+ */
+public class AsyncJBossOperations {
+
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * The number of calls to one server that can run, or hang, at the same time.
+     */
+    static final int MAX_THREADS_PER_CONNECTION = 32;
+
+    private static final ConcurrentMap<String, ExecutorService> EXECUTORS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(Threads.daemonFactory("jmx-timeout"));
+    private static final ConcurrentMap<String, ObjectName> NAMES = new ConcurrentHashMap<>();
+
+    private final MBeanServerConnection _server;
+    private final ExecutorService _executor;
+    private final Map<String, Long> _timeouts = new ConcurrentHashMap<>();
+    private volatile long _defaultTimeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Operations on a connection with threads of its own.
+     */
+    public AsyncJBossOperations(MBeanServerConnection server) {
+        this(server, newExecutor());
+    }
+
+    /**
+     * Operations on a connection, sharing the threads of all operations on the same <code>connectionKey</code>,
+     * see {@link MBeanConnections#key}.
+     */
+    public AsyncJBossOperations(MBeanServerConnection server, String connectionKey) {
+        this(server, EXECUTORS.computeIfAbsent(connectionKey, key -> newExecutor()));
+    }
+
+    private AsyncJBossOperations(MBeanServerConnection server, ExecutorService executor) {
+        _server = server;
+        _executor = executor;
+    }
+
+    private static ExecutorService newExecutor() {
+        // Idle threads go away, so a connection that is no longer used costs nothing
+        return new ThreadPoolExecutor(0, MAX_THREADS_PER_CONNECTION, 5, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                                      Threads.daemonFactory("jmx"));
+    }
+
+    /**
+     * Set the timeout of calls with no timeout of their own, 0 waits forever.
+     */
+    public AsyncJBossOperations setDefaultTimeout(long millis) {
+        _defaultTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Set the timeout of invocations of <code>operation</code>, whatever MBean it is invoked on.
+     */
+    public AsyncJBossOperations setTimeout(String operation, long millis) {
+        _timeouts.put(operation, millis);
+        return this;
+    }
+
+    public long getTimeout(String operation) {
+        Long timeout = _timeouts.get(operation);
+        return timeout != null ? timeout : _defaultTimeout;
+    }
+
+    public CompletableFuture<Object> getAttribute(String name, String attribute) {
+        ObjectName objectName = objectName(name);
+        return call("'" + name + "'.'" + attribute + "'", _defaultTimeout,
+                    () -> _server.getAttribute(objectName, attribute));
+    }
+
+    /**
+     * Read several attributes of one MBean in a single round trip.
+     * @return the values by attribute name, attributes the MBean does not have are left out
+     */
+    public CompletableFuture<Map<String, Object>> getAttributes(String name, String... attributes) {
+        ObjectName objectName = objectName(name);
+        return call("'" + name + "'." + Arrays.toString(attributes), _defaultTimeout, () -> {
+            AttributeList list = _server.getAttributes(objectName, attributes);
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Object attribute : list) {
+                values.put(((Attribute) attribute).getName(), ((Attribute) attribute).getValue());
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<Object> invoke(String name, String operation, Object... args) {
+        ObjectName objectName = objectName(name);
+        String[] types = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i].getClass().getName();
+        }
+        return call("'" + name + "'.'" + operation + "'", getTimeout(operation),
+                    () -> _server.invoke(objectName, operation, args.length > 0 ? args : null,
+                                         args.length > 0 ? types : null));
+    }
+
+    private <T> CompletableFuture<T> call(String what, long timeout, Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            _executor.execute(() -> {
+                // The clock starts when the call starts running
+                Thread thread = Thread.currentThread();
+                if (timeout > 0) {
+                    ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                        if (result.completeExceptionally(
+                                new TimeoutException(what + " did not answer within " + timeout + " ms"))) {
+                            thread.interrupt();
+                        }
+                    }, timeout, TimeUnit.MILLISECONDS);
+                    result.whenComplete((value, failure) -> timer.cancel(false));
+                }
+                try {
+                    result.complete(call.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    // Do not carry an interrupt meant for this call over to the next one
+                    Thread.interrupted();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new TimeoutException(
+                what + " cannot be made, " + MAX_THREADS_PER_CONNECTION + " calls to the server are hanging"));
+        }
+        return result;
+    }
+
+    /**
+     * Parse <code>name</code> once for the whole build.
+     */
+    public static ObjectName objectName(String name) {
+        ObjectName objectName = NAMES.get(name);
+        if (objectName == null) {
+            try {
+                objectName = new ObjectName(name);
+            } catch (MalformedObjectNameException e) {
+                throw new RuntimeException("Invalid object name '" + name + "'", e);
+            }
+            NAMES.putIfAbsent(name, objectName);
+        }
+        return objectName;
+    }
+}
@@ -0,0 +1,69 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * Remembers what was deployed to a server: for every deployment url the size, modification time and content
+ * hash of the deployed file, and the start id of the server instance it was deployed to. Lets the deploy goal
+ * skip redeploying artifacts that are byte-identical to what the running server already has.
+ */
+public class DeploymentLedger {
+
+    private final File file;
+    private final Properties entries = new Properties();
+
+    public DeploymentLedger(final File file) throws IOException {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                entries.load(in);
+            }
+        }
+    }
+
+    /**
+     * Whether <code>deployed</code> is identical to what was deployed from <code>url</code> to the server
+     * instance identified by <code>startId</code>.
+     */
+    public synchronized boolean isUnchanged(final URL url, final File deployed, final String startId) throws IOException {
+        final String entry = entries.getProperty(url.toExternalForm());
+        if (entry == null || startId == null) {
+            return false;
+        }
+        final String[] fields = entry.split(",", 4);
+        try {
+            if (fields.length != 4 || !fields[3].equals(startId) || Long.parseLong(fields[0]) != deployed.length()) {
+                return false;
+            }
+            // Same size and timestamp is taken as unchanged, a rebuilt artifact has to hash the same
+            return Long.parseLong(fields[1]) == deployed.lastModified() || fields[2].equals(Fingerprint.of(deployed));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public synchronized void record(final URL url, final File deployed, final String startId) throws IOException {
+        if (startId == null) {
+            return;
+        }
+        entries.setProperty(url.toExternalForm(),
+                            deployed.length() + "," + deployed.lastModified() + "," + Fingerprint.of(deployed) + "," + startId);
+    }
+
+    public synchronized void store() throws IOException {
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            entries.store(out, "Deployments made by jboss-maven-plugin");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.polopoly.jboss;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Operations on whole directory trees.
+ */
+public final class FileTrees {
+
+    private static volatile boolean linksSupported = true;
+
+    private FileTrees() {
+    }
+
+    /**
+     * Recreate the tree <code>source</code> in <code>target</code>. Archives (jars, zips, ...) are hard linked,
+     * everything else is copied so that changes made on one side never show on the other. Falls back to copying
+     * archives where hard links are not supported.
+     *
+     * A linked archive must never be written in place: {@link ZipExtractor} replaces files rather than truncating
+     * them, and anything else that writes into the tree has to call {@link #breakLinks} first.
+     *
+     * @param exclude paths of <code>source</code> to leave out, directories included
+     */
+    public static void linkOrCopy(final Path source, final Path target, final Predicate<Path> exclude, final Log log)
+        throws IOException
+    {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                throws IOException
+            {
+                if (exclude.test(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (exclude.test(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final Path destination = target.resolve(source.relativize(file).toString());
+                Files.deleteIfExists(destination);
+                if (!isArchive(file) || !link(destination, file, log)) {
+                    Files.copy(file, destination, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean link(final Path link, final Path existing, final Log log) {
+        if (!linksSupported) {
+            return false;
+        }
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.info("[JBOSS] Hard links not supported (" + e.getMessage() + "), copying files instead");
+            linksSupported = false;
+            return false;
+        }
+    }
+
+    /**
+     * Replace every file below <code>root</code> that is hard linked from elsewhere with a private copy, so that
+     * it can be written in place without changing the other side. Where the link count cannot be read every
+     * archive is copied.
+     */
+    public static void breakLinks(final Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && isLinked(file)) {
+                    final Path copy = file.resolveSibling(file.getFileName() + ".unlink");
+                    Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isLinked(final Path file) throws IOException {
+        try {
+            return ((Number) Files.getAttribute(file, "unix:nlink")).intValue() > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return isArchive(file);
+        }
+    }
+
+    private static boolean isArchive(final Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".war")
+            || name.endsWith(".ear") || name.endsWith(".sar") || name.endsWith(".rar");
+    }
+
+    /**
+     * Delete a directory and everything below it, does nothing if it does not exist.
+     */
+    public static void delete(final Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
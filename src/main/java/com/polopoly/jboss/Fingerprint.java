@@ -0,0 +1,72 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Accumulates strings and file contents into a SHA-1 digest, used to identify an installation or a
+ * server configuration by what went into it.
+ */
+public class Fingerprint {
+
+    private final MessageDigest digest;
+
+    public Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    public Fingerprint add(final String value) {
+        final byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        addLength(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    public Fingerprint add(final File file) throws IOException {
+        addLength(file.length());
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] buffer = new byte[64 * 1024];
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return this;
+    }
+
+    public Fingerprint addAll(final Iterable<File> files) throws IOException {
+        for (File file : files) {
+            add(file);
+        }
+        return this;
+    }
+
+    public String toHex() {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private void addLength(final long length) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (length >>> shift));
+        }
+    }
+
+    /**
+     * Convenience for hashing the content of a single file.
+     */
+    public static String of(final File file) throws IOException {
+        return new Fingerprint().add(file).toHex();
+    }
+}
@@ -0,0 +1,101 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A cache of fully patched installation trees shared by all builds on one machine.
+ *
+ * Each entry is a directory named after a {@link Fingerprint} of the distribution and its ordered patches.
+ * Entries are populated once, under an inter-process file lock, and then materialised into the install
+ * directory with {@link FileTrees#linkOrCopy}, so that configuration edited in the install directory can never
+ * leak back into the cache.
+ */
+public class InstallCache {
+
+    /**
+     * Populates an empty directory with a complete installation.
+     */
+    public interface Populator {
+        void populate(File directory) throws MojoExecutionException;
+    }
+
+    private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final Log log;
+
+    public InstallCache(final File directory, final Log log) {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    /**
+     * Make sure the cache holds an entry for <code>key</code>, populating it if needed, and materialise it into
+     * <code>target</code>.
+     */
+    public void install(final String key, final File target, final Populator populator)
+        throws MojoExecutionException
+    {
+        final File entry = new File(directory, key);
+        try {
+            synchronized (monitor(entry)) {
+                try (FileChannel channel = lockChannel(key)) {
+                    final FileLock lock = channel.lock();
+                    try {
+                        if (!entry.isDirectory()) {
+                            populate(key, entry, populator);
+                        } else {
+                            log.info("[JBOSS] Using cached installation " + entry);
+                        }
+                        materialise(entry.toPath(), target.toPath());
+                    } finally {
+                        lock.release();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to install from cache " + entry, e);
+        }
+    }
+
+    private void populate(final String key, final File entry, final Populator populator)
+        throws IOException, MojoExecutionException
+    {
+        final File staging = new File(directory, key + ".tmp");
+        if (staging.exists()) {
+            log.info("[JBOSS] Removing incomplete cache entry " + staging);
+            FileTrees.delete(staging.toPath());
+        }
+        log.info("[JBOSS] Populating installation cache " + entry);
+        populator.populate(staging);
+        Files.move(staging.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void materialise(final Path source, final Path target) throws IOException {
+        FileTrees.linkOrCopy(source, target, path -> false, log);
+    }
+
+    private FileChannel lockChannel(final String key) throws IOException {
+        Files.createDirectories(directory.toPath());
+        return new RandomAccessFile(new File(directory, key + ".lock"), "rw").getChannel();
+    }
+
+    private static Object monitor(final File entry) {
+        final String key = entry.getAbsolutePath();
+        final Object monitor = new Object();
+        final Object existing = MONITORS.putIfAbsent(key, monitor);
+        return existing != null ? existing : monitor;
+    }
+}
@@ -4,75 +4,265 @@ import org.apache.maven.plugin.MojoExecutionException;
 
 import javax.management.MBeanException;
 import javax.management.MBeanServerConnection;
-import javax.management.MalformedObjectNameException;
-import javax.management.ObjectName;
 import javax.management.OperationsException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class JBossOperations {
 
-    private MBeanServerConnection _server;
+    private static final String MAIN_DEPLOYER = "jboss.system:service=MainDeployer";
+
+    private static final String SERVER = "jboss.system:type=Server";
+
+    private static final String STARTED = "STARTED";
+
+    private static final Pattern DEPLOYMENT =
+        Pattern.compile("\\{ url=(\\S+) \\}(.*?)(?=\\{ url=|\\z)", Pattern.DOTALL);
+
+    private static final Pattern STATE = Pattern.compile("\\bstate: (\\w+)");
+
+    private AsyncJBossOperations _async;
 
     public JBossOperations(MBeanServerConnection server) {
-        _server = server;
+        this(new AsyncJBossOperations(server));
+    }
+
+    public JBossOperations(AsyncJBossOperations async) {
+        _async = async;
+    }
+
+    /**
+     * The non blocking operations these delegate to, to fire several calls at once.
+     */
+    public AsyncJBossOperations async() {
+        return _async;
     }
 
     public boolean isStarted() {
-        return (Boolean) getAttribute("jboss.system:type=Server", "Started");
+        return getStatus().isStarted();
+    }
+
+    /**
+     * An id of the running server instance, it changes every time the server is restarted.
+     * @return the id or <code>null</code> if it cannot be determined or the server has not started
+     */
+    public String getStartId() {
+        return getStatus().getStartId();
+    }
+
+    /**
+     * Read whether the server has started, and since when, in one round trip.
+     */
+    public ServerStatus getStatus() {
+        Map<String, Object> values = getAttributes(SERVER, "Started", "StartDate");
+        return new ServerStatus(Boolean.TRUE.equals(values.get("Started")), values.get("StartDate"));
     }
 
     public boolean isDeployed(URL url) throws MojoExecutionException {
-        return (Boolean) invoke("jboss.system:service=MainDeployer", "isDeployed", url);
+        return (Boolean) invoke(MAIN_DEPLOYER, "isDeployed", url);
+    }
+
+    /**
+     * Query the deployed state of several urls at once, with a single <code>listDeployedAsString</code> call
+     * that describes every deployment of the server. Urls the listing does not settle, or all of them if the
+     * server does not answer the call, are asked about one by one, concurrently.
+     * @return the urls that are deployed
+     */
+    public List<URL> deployedOf(Collection<URL> urls) throws MojoExecutionException {
+        Map<String, String> states = null;
+        try {
+            Object listing = invoke(MAIN_DEPLOYER, "listDeployedAsString");
+            states = listing instanceof String ? deploymentStates((String) listing) : null;
+        } catch (MojoExecutionException e) {
+            // Not a MainDeployer that lists its deployments, ask for each url instead
+        }
+        List<URL> deployed = new ArrayList<URL>();
+        Map<URL, CompletableFuture<Object>> queries = new LinkedHashMap<URL, CompletableFuture<Object>>();
+        for (URL url : urls) {
+            if (states != null && !states.isEmpty() && !states.containsKey(url.toString())) {
+                continue;
+            }
+            String state = states != null ? states.get(url.toString()) : null;
+            if (state == null) {
+                queries.put(url, _async.invoke(MAIN_DEPLOYER, "isDeployed", url));
+            } else if (STARTED.equals(state)) {
+                deployed.add(url);
+            }
+        }
+        for (Map.Entry<URL, CompletableFuture<Object>> query : queries.entrySet()) {
+            if ((Boolean) await(query.getValue(), MAIN_DEPLOYER, "isDeployed")) {
+                deployed.add(query.getKey());
+            }
+        }
+        return deployed;
+    }
+
+    /**
+     * Read the state of every deployment from the MainDeployer's listing, where each deployment is described as
+     * <code>{ url=... }</code> followed by, among others, a <code>state: ...</code> line.
+     * @return the state by url, null for deployments listed without one
+     */
+    static Map<String, String> deploymentStates(String listing) {
+        Map<String, String> states = new LinkedHashMap<String, String>();
+        Matcher deployment = DEPLOYMENT.matcher(listing);
+        while (deployment.find()) {
+            Matcher state = STATE.matcher(deployment.group(2));
+            states.put(deployment.group(1), state.find() ? state.group(1) : null);
+        }
+        return states;
+    }
+
+    /**
+     * Ask the MainDeployer whether any deployment is stuck waiting for something that will not arrive.
+     * @throws MojoExecutionException with the incomplete deployment listing if there is one
+     */
+    public void checkIncompleteDeployments() throws MojoExecutionException {
+        try {
+            invoke(MAIN_DEPLOYER, "checkIncompleteDeployments");
+        } catch (MojoExecutionException e) {
+            throw new MojoExecutionException(rootMessage(e), e);
+        }
+    }
+
+    /**
+     * Like {@link #checkIncompleteDeployments()}, but only fail if the incomplete deployment listing names one of
+     * <code>urls</code>, or the file one of them points at. Deployments of others are not our concern.
+     * @throws MojoExecutionException with the incomplete deployment listing if it concerns <code>urls</code>
+     */
+    public void checkIncompleteDeployments(Collection<URL> urls) throws MojoExecutionException {
+        try {
+            checkIncompleteDeployments();
+        } catch (MojoExecutionException e) {
+            String listing = String.valueOf(e.getMessage());
+            for (URL url : urls) {
+                if (listing.contains(url.toString()) || listing.contains(fileName(url))) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static String fileName(URL url) {
+        String path = url.getPath();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Have the deployment scanner scan the deploy directory right away, deploying whatever it finds new or
+     * changed before returning.
+     * @return false if there is no deployment scanner to ask
+     */
+    public boolean scanDeployments() {
+        try {
+            invoke("jboss.deployment:type=DeploymentScanner,flavor=URL", "scan");
+            return true;
+        } catch (MojoExecutionException e) {
+            return false;
+        }
     }
 
     public void redeploy(URL url) throws MojoExecutionException {
-        invoke("jboss.system:service=MainDeployer", "redeploy", url);
+        invoke(MAIN_DEPLOYER, "redeploy", url);
     }
 
     public void shutDown() throws MojoExecutionException {
-        invoke("jboss.system:type=Server", "shutdown");
+        invoke(SERVER, "shutdown");
     }
 
     // -----------------------------------------------------------
     // MBean manipulators
     // -----------------------------------------------------------
-    private Object getAttribute(String name, String attribute) {
-        return getAttribute(objectName(name), attribute);
-    }
-
-    private Object getAttribute(ObjectName name, String attribute) {
+    private Map<String, Object> getAttributes(String name, String... attributes) {
         try {
-            return _server.getAttribute(name, attribute);
+            return awaitRaw(_async.getAttributes(name, attributes));
         } catch (OperationsException oe) {
-            return null;
+            return Collections.emptyMap();
         } catch (Exception e) {
-            throw new RuntimeException("Unable to retrieve mbean attribute '" + name + "'.'" + attribute + "'");
+            throw new RuntimeException("Unable to retrieve mbean attributes '" + name + "'."
+                                       + Arrays.toString(attributes), e);
         }
     }
 
-    private Object invoke(String name, String operation) throws MojoExecutionException {
-        return invoke(objectName(name), operation, null, null); 
+    private Object invoke(String name, String operation, Object... args) throws MojoExecutionException {
+        return await(_async.invoke(name, operation, args), name, operation);
     }
 
-    private Object invoke(String name, String operation, Object value) throws MojoExecutionException {
-        return invoke(objectName(name), operation, new Object[]{value}, new String[]{value.getClass().getName()});
-    }
-
-    private Object invoke(ObjectName name, String operation, Object[] values, String[] types) throws MojoExecutionException {
+    private static Object await(CompletableFuture<Object> call, String name, String operation)
+        throws MojoExecutionException
+    {
         try {
-            return _server.invoke(name, operation, values, types);
+            return awaitRaw(call);
         } catch (MBeanException e) {
             throw new MojoExecutionException("Failed to invoke operation '" + operation + "'", e);
+        } catch (TimeoutException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
         } catch (Exception e) {
             throw new MojoExecutionException("Unable to execute mbean operation '" + name + "'.'" + operation + "'", e);
         }
     }
 
-    private ObjectName objectName(String name) {
+    private static <T> T awaitRaw(CompletableFuture<T> call) throws Exception {
         try {
-            return new ObjectName(name);
-        } catch (MalformedObjectNameException e) {
-            throw new RuntimeException("Invalid object name '" + name + "'", e);
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.cancel(true);
+            throw e;
+        }
+    }
+
+    private static String rootMessage(Throwable t) {
+        String message = t.getMessage();
+        for (Throwable cause = t.getCause(); cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+            if (cause.getMessage() != null) {
+                message = cause.getMessage();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * The state of the server as read by {@link #getStatus()}.
+     */
+    public static final class ServerStatus {
+        private final boolean _started;
+        private final String _startId;
+
+        ServerStatus(boolean started, Object startDate) {
+            _started = started;
+            _startId = started && startDate instanceof Date ? Long.toString(((Date) startDate).getTime()) : null;
+        }
+
+        public boolean isStarted() {
+            return _started;
+        }
+
+        /**
+         * @see JBossOperations#getStartId()
+         */
+        public String getStartId() {
+            return _startId;
         }
     }
 }
@@ -0,0 +1,204 @@
+package com.polopoly.jboss;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Captures the output of a child process to rolling, optionally compressed, files and keeps the last lines in
+ * memory so they can be shown when something fails.
+ *
+ * Lines are handed over through a bounded queue to a writer thread: when the disk cannot keep up lines are
+ * dropped (and counted) rather than ever holding up the {@link LogPump}, and thereby the child process.
+ */
+public class LogCapture {
+
+    private final File directory;
+    private final String name;
+    private final boolean compress;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final int tailLines;
+    private final Log log;
+
+    private final BlockingQueue<String> queue;
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    private volatile boolean failed;
+    private List<String> frozenTail;
+
+    public LogCapture(final File directory, final String name, final boolean compress, final long maxFileSize,
+                      final int maxFiles, final int tailLines, final int queueCapacity, final Log log)
+    {
+        this.directory = directory;
+        this.name = name;
+        this.compress = compress;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.tailLines = tailLines;
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * Start the writer thread, the previous capture files are rolled first.
+     */
+    public LogCapture start() {
+        Threads.daemonFactory("log-capture-" + name).newThread(this::write).start();
+        return this;
+    }
+
+    /**
+     * A listener capturing one stream of the process, lines are prefixed with <code>prefix</code>. The capture
+     * files are closed once every stream handed out this way has ended.
+     */
+    public LogPump.Listener listener(final String prefix) {
+        openStreams.incrementAndGet();
+        return new LogPump.Listener() {
+            @Override
+            public void onLine(final String line) {
+                capture(prefix.isEmpty() ? line : prefix + line);
+            }
+
+            @Override
+            public void onEnd() {
+                if (openStreams.decrementAndGet() == 0) {
+                    closed = true;
+                }
+            }
+        };
+    }
+
+    private void capture(final String line) {
+        synchronized (tail) {
+            if (frozenTail == null && tailLines > 0) {
+                if (tail.size() == tailLines) {
+                    tail.removeFirst();
+                }
+                tail.addLast(line);
+            }
+        }
+        enqueue(line);
+    }
+
+    private void enqueue(final String line) {
+        if (!failed && !queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop adding to the tail, so that what the process logs while being shut down does not push out the lines
+     * that explain why.
+     */
+    public void freezeTail() {
+        synchronized (tail) {
+            if (frozenTail == null) {
+                frozenTail = new ArrayList<>(tail);
+            }
+        }
+    }
+
+    /**
+     * The last lines captured, up to the moment of {@link #freezeTail()} if it was called.
+     */
+    public List<String> tail() {
+        synchronized (tail) {
+            return frozenTail != null ? frozenTail : new ArrayList<>(tail);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getFile() {
+        return file(0);
+    }
+
+    private void write() {
+        Writer writer = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            roll();
+            writer = open();
+            long written = 0;
+            while (true) {
+                final String line = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    writer.flush();
+                    if (closed) {
+                        break;
+                    }
+                    continue;
+                }
+                if (written > maxFileSize && maxFileSize > 0) {
+                    writer.close();
+                    roll();
+                    writer = open();
+                    written = 0;
+                }
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        } catch (IOException e) {
+            log.warn("[JBOSS] Unable to capture the " + name + " log to " + directory + ": " + e.getMessage());
+            failed = true;
+            queue.clear();
+        } catch (InterruptedException ignore) {
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignore) {
+                }
+            }
+            if (dropped.get() > 0) {
+                log.warn("[JBOSS] Dropped " + dropped.get() + " lines of the " + name + " log, the disk was too slow");
+            }
+        }
+    }
+
+    private Writer open() throws IOException {
+        OutputStream out = new FileOutputStream(file(0));
+        if (compress) {
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void roll() throws IOException {
+        Files.deleteIfExists(file(maxFiles - 1).toPath());
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            final File file = file(i);
+            if (file.exists()) {
+                Files.move(file.toPath(), file(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private File file(final int generation) {
+        return new File(directory, name + (generation > 0 ? "." + generation : "") + ".log" + (compress ? ".gz" : ""));
+    }
+}
@@ -0,0 +1,235 @@
+package com.polopoly.jboss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Drains the output of every child process of the build on one thread.
+ *
+ * Streams are polled with {@link InputStream#available()} into a single shared buffer, so the pump never blocks
+ * on one stream while another fills up. Bytes are only decoded into lines when the stream is logged or has
+ * listeners, otherwise they are simply discarded, and the lines of one pass are written to the Maven
+ * {@link Log} in a single call.
+ */
+public final class LogPump {
+
+    /**
+     * Receives the lines of a stream, on the pump thread.
+     */
+    public interface Listener {
+        void onLine(String line);
+
+        /**
+         * The process exited and its stream has been drained.
+         */
+        default void onEnd() {
+        }
+    }
+
+    private static final long IDLE_MIN = 5;
+    private static final long IDLE_MAX = 100;
+    private static final long EXIT_GRACE = 200;
+
+    private static LogPump instance;
+
+    private final List<Source> sources = new ArrayList<>();
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private LogPump() {
+    }
+
+    /**
+     * The pump of the build, its thread is started the first time a stream is attached.
+     */
+    public static synchronized LogPump get() {
+        if (instance == null) {
+            instance = new LogPump();
+            final Thread thread = Threads.daemonFactory("log-pump").newThread(instance::run);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Pump <code>stream</code> of <code>process</code> until the process has exited and the stream is drained.
+     *
+     * @param log where to log the lines, or null to only hand them to the listeners
+     * @param prefix the name of the process, for the log
+     * @param logName the name of the stream, for the log
+     */
+    public void attach(final Process process, final InputStream stream, final Log log,
+                       final String prefix, final String logName, final Listener... listeners)
+    {
+        final Source source = new Source(process, stream, log, "[" + prefix + "] -- log(" + logName + ") -- ",
+                                         Arrays.asList(listeners));
+        synchronized (sources) {
+            sources.add(source);
+            sources.notifyAll();
+        }
+    }
+
+    private void run() {
+        final List<Source> active = new ArrayList<>();
+        long idle = IDLE_MIN;
+        while (true) {
+            synchronized (sources) {
+                while (sources.isEmpty() && active.isEmpty()) {
+                    try {
+                        sources.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                active.addAll(sources);
+                sources.clear();
+            }
+
+            boolean read = false;
+            for (final Iterator<Source> it = active.iterator(); it.hasNext(); ) {
+                final Source source = it.next();
+                try {
+                    read |= source.pump(buffer);
+                } catch (IOException | RuntimeException e) {
+                    source.end();
+                }
+                if (source.ended) {
+                    it.remove();
+                }
+                source.flush();
+            }
+
+            if (read) {
+                idle = IDLE_MIN;
+            } else {
+                try {
+                    Thread.sleep(idle);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                idle = Math.min(IDLE_MAX, idle * 2);
+            }
+        }
+    }
+
+    private static final class Source {
+        private final Process process;
+        private final InputStream stream;
+        private final Log log;
+        private final String prefix;
+        private final List<Listener> listeners;
+        private final boolean decode;
+        private final StringBuilder batch = new StringBuilder();
+        private byte[] partial = new byte[256];
+        private int partialLength;
+        private long exitedAt;
+        private boolean ended;
+
+        Source(final Process process, final InputStream stream, final Log log, final String prefix,
+               final List<Listener> listeners)
+        {
+            this.process = process;
+            this.stream = stream;
+            this.log = log;
+            this.prefix = prefix;
+            this.listeners = listeners;
+            this.decode = log != null || !listeners.isEmpty();
+        }
+
+        /**
+         * @return true if anything was read
+         */
+        boolean pump(final byte[] buffer) throws IOException {
+            final int available = stream.available();
+            if (available > 0) {
+                final int count = stream.read(buffer, 0, Math.min(available, buffer.length));
+                if (count < 0) {
+                    end();
+                    return false;
+                }
+                if (decode) {
+                    split(buffer, count);
+                }
+                return count > 0;
+            }
+            // Never block on a read: a grandchild may still hold the pipe of an exited process
+            if (!process.isAlive()) {
+                final long now = System.currentTimeMillis();
+                if (exitedAt == 0) {
+                    exitedAt = now;
+                } else if (now - exitedAt > EXIT_GRACE) {
+                    end();
+                }
+            }
+            return false;
+        }
+
+        private void split(final byte[] buffer, final int count) {
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] == '\n') {
+                    append(buffer, start, i - start);
+                    line();
+                    start = i + 1;
+                }
+            }
+            append(buffer, start, count - start);
+        }
+
+        private void append(final byte[] bytes, final int offset, final int length) {
+            if (partialLength + length > partial.length) {
+                partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+            }
+            System.arraycopy(bytes, offset, partial, partialLength, length);
+            partialLength += length;
+        }
+
+        private void line() {
+            int length = partialLength;
+            if (length > 0 && partial[length - 1] == '\r') {
+                length--;
+            }
+            final String line = new String(partial, 0, length, Charset.defaultCharset());
+            partialLength = 0;
+            if (log != null) {
+                if (batch.length() > 0) {
+                    batch.append(System.lineSeparator());
+                }
+                batch.append(prefix).append(line);
+            }
+            for (Listener listener : listeners) {
+                listener.onLine(line);
+            }
+        }
+
+        void flush() {
+            if (batch.length() > 0) {
+                log.info(batch.toString());
+                batch.setLength(0);
+            }
+        }
+
+        void end() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            if (partialLength > 0) {
+                line();
+            }
+            try {
+                stream.close();
+            } catch (IOException ignore) {
+            }
+            for (Listener listener : listeners) {
+                listener.onEnd();
+            }
+        }
+    }
+}
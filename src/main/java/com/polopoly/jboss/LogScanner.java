@@ -0,0 +1,109 @@
+package com.polopoly.jboss;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scans a log stream for signs that a boot or a deployment has failed.
+ *
+ * All patterns are combined into one alternation matched with a single reused {@link Matcher}, so every line costs
+ * one pass and no allocation. The first hit is kept together with the lines before it and, until it is reported,
+ * the lines after it, which usually hold the stack trace.
+ */
+public class LogScanner implements LogPump.Listener {
+
+    /**
+     * Failures of JBoss itself only: an application may well log errors while it is deployed and still work.
+     */
+    public static final String[] DEFAULT_PATTERNS = {
+        "DeploymentException",
+        "Incomplete Deployment listing",
+        "BindException",
+        "OutOfMemoryError",
+    };
+
+    private final Matcher matcher;
+    private final String[] before;
+    private final List<String> after = new ArrayList<>();
+    private final int contextLines;
+    private final Runnable onMatch;
+    private int next;
+    private volatile String hit;
+    private List<String> hitContext;
+
+    /**
+     * @param patterns regular expressions, any of which marks a failure
+     * @param contextLines the number of lines to keep on each side of the hit
+     * @param onMatch run on the pump thread when the first hit is seen
+     */
+    public LogScanner(final String[] patterns, final int contextLines, final Runnable onMatch) {
+        final StringBuilder combined = new StringBuilder();
+        for (String pattern : patterns) {
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern).append(')');
+        }
+        this.matcher = Pattern.compile(combined.toString()).matcher("");
+        this.contextLines = Math.max(0, contextLines);
+        this.before = new String[this.contextLines];
+        this.onMatch = onMatch;
+    }
+
+    @Override
+    public void onLine(final String line) {
+        if (hit != null) {
+            synchronized (after) {
+                if (after.size() < contextLines) {
+                    after.add(line);
+                }
+            }
+            return;
+        }
+        if (matcher.reset(line).find()) {
+            final List<String> context = new ArrayList<>(contextLines + 1);
+            for (int i = 0; i < before.length; i++) {
+                final String previous = before[(next + i) % before.length];
+                if (previous != null) {
+                    context.add(previous);
+                }
+            }
+            context.add(line);
+            hitContext = context;
+            hit = matcher.group();
+            onMatch.run();
+        } else if (before.length > 0) {
+            before[next] = line;
+            next = (next + 1) % before.length;
+        }
+    }
+
+    /**
+     * @return whether a failure pattern has been seen
+     */
+    public boolean hasFailed() {
+        return hit != null;
+    }
+
+    /**
+     * Describe the hit, or return null if there was none.
+     */
+    public String failure() {
+        if (hit == null) {
+            return null;
+        }
+        final StringBuilder message = new StringBuilder();
+        message.append("JBoss logged '").append(hit).append("':");
+        for (String line : hitContext) {
+            message.append(System.lineSeparator()).append(line);
+        }
+        synchronized (after) {
+            for (String line : after) {
+                message.append(System.lineSeparator()).append(line);
+            }
+        }
+        return message.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.polopoly.jboss;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServerConnection;
+
+/**
+ * Registry of JBoss JMX MBean connections shared by all mojos of a build.
+ *
+ * The registry is static and so lives as long as the plugin class realm, which can outlive a build (embedded
+ * Maven, mvnd) and so hold connections to servers that have since been stopped or restarted. Connections are
+ * therefore keyed by address, naming port and credentials, and validated with a cheap
+ * {@link MBeanServerConnection#getMBeanCount()} round trip, bounded by a timeout, before being handed out again.
+ */
+public final class MBeanConnections {
+
+    private static final ConcurrentMap<String, MBeanServerConnection> CONNECTIONS = new ConcurrentHashMap<>();
+
+    private static final ExecutorService PROBES = Executors.newCachedThreadPool(Threads.daemonFactory("jmx-probe"));
+
+    private MBeanConnections() {
+    }
+
+    public static String key(final String address, final String port, final String username, final String password) {
+        return address + ":" + port + ":" + (username != null ? username : "")
+            + ":" + Integer.toHexString(Objects.hashCode(password));
+    }
+
+    /**
+     * Get a registered connection, evicting it if it does not answer within <code>timeoutMillis</code>.
+     * @param timeoutMillis how long the validation may take, 0 waits forever
+     * @return the connection or null if there is none or it was stale
+     */
+    public static MBeanServerConnection get(final String key, final long timeoutMillis) {
+        final MBeanServerConnection connection = CONNECTIONS.get(key);
+        if (connection == null) {
+            return null;
+        }
+        // A half dead server can leave the call hanging, so it runs on a thread of its own
+        final Future<Integer> probe = PROBES.submit(connection::getMBeanCount);
+        try {
+            if (timeoutMillis > 0) {
+                probe.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                probe.get();
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            probe.cancel(true);
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            probe.cancel(true);
+            CONNECTIONS.remove(key, connection);
+            return null;
+        }
+    }
+
+    public static void put(final String key, final MBeanServerConnection connection) {
+        CONNECTIONS.put(key, connection);
+    }
+
+    /**
+     * Forget every connection to <code>address:port</code>, whatever the credentials.
+     */
+    public static void evict(final String address, final String port) {
+        final String prefix = address + ":" + port + ":";
+        CONNECTIONS.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+}
@@ -0,0 +1,217 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Moves all the ports of a JBoss server by one offset so that several servers can run on one host.
+ *
+ * Offsets are allocated atomically across builds: an offset is claimed by holding the lock of its file in the
+ * temporary directory for the lifetime of the JVM, and only if every port it maps to can be bound. The server
+ * configuration is rewritten from pristine <code>.orig</code> copies, so applying another offset, or offset 0,
+ * later on is always exact. Only the files of the distribution that bind those ports are rewritten, see
+ * {@link #BINDING_FILES}, so deployments that merely point at a port of another host (a datasource, a remote
+ * JMS provider) are left alone.
+ */
+public final class PortOffset {
+
+    /**
+     * The ports a JBoss 4 <code>default</code> or <code>all</code> server binds out of the box.
+     */
+    public static final int[] JBOSS_PORTS = {
+        1098, 1099, 1100, 1101, 1102, 1161, 1162, 3528, 3873, 4444, 4445, 4446, 4447, 8009, 8080, 8083, 8093,
+        8443, 8444, 8445,
+    };
+
+    public static final int STEP = 100;
+
+    /**
+     * The files of a JBoss 4 server, relative to the server directory, that configure the ports it binds.
+     */
+    static final String[] BINDING_FILES = {
+        "conf/jboss-service.xml",
+        "deploy/cluster-service.xml",
+        "deploy/iiop-service.xml",
+        "deploy/jmx-invoker-service.xml",
+        "deploy/jms/uil2-service.xml",
+        "deploy/jms/jbossmq-httpil.sar/META-INF/jboss-service.xml",
+        "deploy/http-invoker.sar/META-INF/jboss-service.xml",
+        "deploy/ejb3.deployer/META-INF/jboss-service.xml",
+        "deploy/snmp-adaptor.jar/META-INF/jboss-service.xml",
+        "deploy/jbossweb-tomcat*.sar/server.xml",
+        "deploy/jboss-web.deployer/server.xml",
+    };
+
+    private static final int MAX_OFFSETS = 200;
+
+    private static final Pattern PORT = Pattern.compile("(?<=[>\":])(\\d{4})(?=[<\"/])");
+
+    /**
+     * Claims, kept for the lifetime of the JVM.
+     */
+    private static final List<FileLock> CLAIMS = new ArrayList<>();
+
+    private PortOffset() {
+    }
+
+    /**
+     * Claim the first free offset, a multiple of {@link #STEP} above 0, at which all of {@link #JBOSS_PORTS} and
+     * <code>extraPorts</code> can be bound on <code>address</code>.
+     */
+    public static synchronized int allocate(final InetAddress address, final int[] extraPorts, final Log log)
+        throws MojoExecutionException
+    {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "jboss-maven-plugin-ports");
+        try {
+            Files.createDirectories(directory.toPath());
+            for (int offset = STEP; offset <= STEP * MAX_OFFSETS && offset + 8445 <= 65535; offset += STEP) {
+                final FileChannel channel = new RandomAccessFile(new File(directory, offset + ".lock"), "rw")
+                    .getChannel();
+                final FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    channel.close();
+                    continue;
+                }
+                if (canBind(address, JBOSS_PORTS, offset) && canBind(address, extraPorts, offset)) {
+                    CLAIMS.add(lock);
+                    log.info("[JBOSS] Allocated port offset " + offset);
+                    return offset;
+                }
+                lock.release();
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to allocate a port offset in " + directory, e);
+        }
+        throw new MojoExecutionException("No free port offset left in " + directory);
+    }
+
+    private static boolean canBind(final InetAddress address, final int[] ports, final int offset) {
+        for (int port : ports) {
+            try (ServerSocket socket = new ServerSocket()) {
+                socket.setReuseAddress(false);
+                socket.bind(new InetSocketAddress(address, port + offset));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rewrite the {@link #BINDING_FILES} of <code>serverDirectory</code> so that every port of
+     * {@link #JBOSS_PORTS} is moved by <code>offset</code>.
+     *
+     * @return the number of files rewritten
+     */
+    public static int apply(final File serverDirectory, final int offset, final Log log)
+        throws MojoExecutionException
+    {
+        int rewritten = 0;
+        try {
+            for (Path file : bindingFiles(serverDirectory.toPath())) {
+                if (rewrite(file, offset)) {
+                    rewritten++;
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to apply port offset " + offset + " to " + serverDirectory, e);
+        }
+        log.info("[JBOSS] Applied port offset " + offset + " to " + rewritten + " files in " + serverDirectory);
+        return rewritten;
+    }
+
+    /**
+     * The {@link #BINDING_FILES} that exist below <code>serverDirectory</code>.
+     */
+    static List<Path> bindingFiles(final Path serverDirectory) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (String pattern : BINDING_FILES) {
+            final int wildcard = pattern.indexOf('*');
+            if (wildcard < 0) {
+                final Path file = serverDirectory.resolve(pattern);
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+                continue;
+            }
+            // A wildcard in the directory name, as in the versioned tomcat sar
+            final String directory = pattern.substring(0, pattern.lastIndexOf('/', wildcard));
+            final String glob = pattern.substring(directory.length() + 1, pattern.indexOf('/', wildcard));
+            final String rest = pattern.substring(pattern.indexOf('/', wildcard) + 1);
+            final Path parent = serverDirectory.resolve(directory);
+            if (!Files.isDirectory(parent)) {
+                continue;
+            }
+            try (DirectoryStream<Path> matches = Files.newDirectoryStream(parent, glob)) {
+                for (Path match : matches) {
+                    final Path file = match.resolve(rest);
+                    if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    private static boolean rewrite(final Path file, final int offset) throws IOException {
+        final Path orig = file.resolveSibling(file.getFileName() + ".orig");
+        final Path source = Files.exists(orig) ? orig : file;
+        // Latin-1 maps every byte to one char, so the file comes back byte for byte whatever its encoding
+        final String content = new String(Files.readAllBytes(source), StandardCharsets.ISO_8859_1);
+        final String shifted = shift(content, offset);
+        if (source == file && shifted.equals(content)) {
+            return false;
+        }
+        if (source == file) {
+            Files.copy(file, orig, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, shifted.getBytes(StandardCharsets.ISO_8859_1));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Move the known ports found as a whole element text, attribute value or url port in <code>content</code>.
+     */
+    static String shift(final String content, final int offset) {
+        final Matcher matcher = PORT.matcher(content);
+        final StringBuffer sb = new StringBuffer(content.length());
+        while (matcher.find()) {
+            final int port = Integer.parseInt(matcher.group(1));
+            final boolean known = isKnown(port);
+            matcher.appendReplacement(sb, Integer.toString(known ? port + offset : port));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static boolean isKnown(final int port) {
+        for (int known : JBOSS_PORTS) {
+            if (known == port) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
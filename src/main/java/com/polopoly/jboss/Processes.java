@@ -0,0 +1,289 @@
+package com.polopoly.jboss;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Process id utilities that work on a Java 8 runtime. Where the running JVM has <code>ProcessHandle</code> it is
+ * used through reflection, elsewhere the information comes from <code>/proc</code>, <code>pgrep</code> and
+ * <code>kill</code>, so supervision by pid is only {@link #isSupported() supported} on unix like systems.
+ */
+public final class Processes {
+
+    private Processes() {
+    }
+
+    /**
+     * @return the pid of this JVM
+     */
+    public static long currentPid() {
+        final String name = ManagementFactory.getRuntimeMXBean().getName();
+        return Long.parseLong(name.substring(0, name.indexOf('@')));
+    }
+
+    /**
+     * @return whether processes can be found, signalled and waited for by pid on this system
+     */
+    public static boolean isSupported() {
+        return File.separatorChar == '/';
+    }
+
+    /**
+     * @return the pid of <code>process</code>, or -1 if it cannot be determined
+     */
+    public static long pid(final Process process) {
+        try {
+            final Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (NoSuchMethodException e) {
+            // A Java 8 runtime, where the unix implementation keeps the pid in a private field
+            try {
+                final Field pid = process.getClass().getDeclaredField("pid");
+                pid.setAccessible(true);
+                return pid.getLong(process);
+            } catch (Exception ignore) {
+                return -1;
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the children of <code>pid</code>, their children and so on, in breadth first order
+     * @throws IOException if the processes cannot be listed, neither through <code>/proc</code> nor
+     *         <code>pgrep</code>
+     */
+    public static List<Long> descendants(final long pid)
+        throws IOException
+    {
+        final Map<Long, List<Long>> children = new File("/proc/self").isDirectory() ? procChildren() : null;
+        final List<Long> descendants = new ArrayList<>();
+        final Deque<Long> parents = new ArrayDeque<>();
+        parents.add(pid);
+        while (!parents.isEmpty()) {
+            final long parent = parents.removeFirst();
+            for (long child : children != null
+                              ? children.getOrDefault(parent, Collections.<Long>emptyList())
+                              : pgrepChildren(parent)) {
+                descendants.add(child);
+                parents.addLast(child);
+            }
+        }
+        return descendants;
+    }
+
+    /**
+     * The children of every process, by the parent pid in <code>/proc/&lt;pid&gt;/stat</code>.
+     */
+    private static Map<Long, List<Long>> procChildren() {
+        final Map<Long, List<Long>> children = new HashMap<>();
+        final File[] entries = new File("/proc").listFiles();
+        for (File entry : entries != null ? entries : new File[0]) {
+            final long pid;
+            try {
+                pid = Long.parseLong(entry.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            final String[] stat = stat(pid);
+            if (stat != null && stat.length > 1) {
+                try {
+                    children.computeIfAbsent(Long.parseLong(stat[1]), p -> new ArrayList<>()).add(pid);
+                } catch (NumberFormatException ignore) {
+                }
+            }
+        }
+        return children;
+    }
+
+    private static List<Long> pgrepChildren(final long pid)
+        throws IOException
+    {
+        final List<Long> children = new ArrayList<>();
+        final Process pgrep = new ProcessBuilder("pgrep", "-P", Long.toString(pid))
+            .redirectErrorStream(true)
+            .start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(pgrep.getInputStream(),
+                                                                              StandardCharsets.US_ASCII))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                try {
+                    children.add(Long.parseLong(line.trim()));
+                } catch (NumberFormatException ignore) {
+                }
+            }
+        }
+        try {
+            // 1 is no children, anything above that a failure
+            if (pgrep.waitFor() > 1) {
+                throw new IOException("pgrep -P " + pid + " failed with exit code " + pgrep.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return children;
+    }
+
+    /**
+     * Identify the incarnation of <code>pid</code>, so that a recorded pid can be told apart from an unrelated
+     * process that got the same pid later: the start time in clock ticks since boot from
+     * <code>/proc/&lt;pid&gt;/stat</code>, or the start instant from <code>ProcessHandle</code> elsewhere.
+     *
+     * @return the start time, or null if it cannot be determined
+     */
+    public static String startTime(final long pid) {
+        final String[] stat = stat(pid);
+        if (stat != null && stat.length > 19) {
+            return stat[19];
+        }
+        try {
+            final Class<?> handle = Class.forName("java.lang.ProcessHandle");
+            final Optional<?> process = (Optional<?>) handle.getMethod("of", long.class).invoke(null, pid);
+            if (!process.isPresent()) {
+                return null;
+            }
+            final Object info = handle.getMethod("info").invoke(process.get());
+            final Optional<?> start = (Optional<?>) info.getClass().getMethod("startInstant").invoke(info);
+            return start.isPresent() ? Long.toString(((Instant) start.get()).toEpochMilli()) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the fields of <code>/proc/&lt;pid&gt;/stat</code> after the command name, starting with the
+     *         state (field 3), or null if there is no such file
+     */
+    private static String[] stat(final long pid) {
+        final String stat;
+        try {
+            stat = new String(Files.readAllBytes(Paths.get("/proc", Long.toString(pid), "stat")),
+                              StandardCharsets.US_ASCII);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        // The command name is in parentheses and may itself contain spaces and parentheses
+        final int end = stat.lastIndexOf(')');
+        return end < 0 ? null : stat.substring(end + 1).trim().split("\\s+");
+    }
+
+    /**
+     * Send <code>signal</code>, for example <code>TERM</code> or <code>KILL</code>, to <code>pid</code>.
+     * @return false if it could not be sent
+     */
+    public static boolean signal(final long pid, final String signal) {
+        try {
+            return new ProcessBuilder("kill", "-" + signal, Long.toString(pid))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+                .start()
+                .waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Wait for all of <code>pids</code> to exit, with <code>ProcessHandle.onExit()</code> where the runtime has
+     * it and by polling <code>/proc</code> every few milliseconds elsewhere.
+     *
+     * @return true if they all exited within <code>timeoutMillis</code>
+     */
+    public static boolean awaitExit(final Collection<Long> pids, final long timeoutMillis)
+        throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (long pid : pids) {
+            final Future<?> exit = onExit(pid);
+            if (exit != null) {
+                try {
+                    exit.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    continue;
+                } catch (TimeoutException e) {
+                    return false;
+                } catch (Exception ignore) {
+                    // Fall back to polling
+                }
+            }
+            while (isAlive(pid)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        }
+        return true;
+    }
+
+    private static Future<?> onExit(final long pid) {
+        try {
+            final Class<?> handle = Class.forName("java.lang.ProcessHandle");
+            final Optional<?> process = (Optional<?>) handle.getMethod("of", long.class).invoke(null, pid);
+            return process.isPresent() ? (Future<?>) handle.getMethod("onExit").invoke(process.get()) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determine whether the process <code>pid</code> is alive and still the one that had
+     * <code>startTime</code>, as returned by {@link #startTime(long)}. A null <code>startTime</code> matches
+     * any process.
+     */
+    public static boolean isAlive(final long pid, final String startTime) {
+        if (!isAlive(pid)) {
+            return false;
+        }
+        if (startTime == null) {
+            return true;
+        }
+        final String current = startTime(pid);
+        return current == null ? !new File("/proc/self").isDirectory() : current.equals(startTime);
+    }
+
+    /**
+     * Determine whether a process is alive, through <code>/proc</code> where there is one and
+     * <code>kill -0</code> elsewhere. Where neither works the process is assumed to be alive.
+     */
+    public static boolean isAlive(final long pid) {
+        if (new File("/proc/self").isDirectory()) {
+            return new File("/proc/" + pid).isDirectory();
+        }
+        if (File.separatorChar == '\\') {
+            return true;
+        }
+        try {
+            return new ProcessBuilder("kill", "-0", Long.toString(pid))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+                .start()
+                .waitFor() == 0;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+}
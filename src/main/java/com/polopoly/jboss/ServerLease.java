@@ -0,0 +1,156 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A reference counted lease on a server shared by the builds of one host.
+ *
+ * Every JVM holding the lease has a file, named after its pid, in the holders directory with the number of times
+ * it acquired the lease. The holders are only read and changed under an exclusive {@link FileChannel#lock()}, which
+ * is also held while the first holder starts the server and while the last one stops it, so that no build ever
+ * sees a half started or half stopped server. Holders whose process is gone are reclaimed.
+ */
+public class ServerLease {
+
+    /**
+     * Runs under the lease lock.
+     */
+    public interface Action<T> {
+        /**
+         * @param holders the number of times the lease is held, by any process, not counting the acquisition or
+         *                release this action is part of
+         */
+        T run(int holders) throws MojoExecutionException, MojoFailureException;
+    }
+
+    private static final Object MONITOR = new Object();
+
+    private final File lockFile;
+    private final File holders;
+    private final Log log;
+
+    /**
+     * @param directory where to keep the lock file and the holders
+     * @param name the name of the leased server
+     */
+    public ServerLease(final File directory, final String name, final Log log) {
+        this.lockFile = new File(directory, name + ".lease");
+        this.holders = new File(directory, name + ".holders");
+        this.log = log;
+    }
+
+    /**
+     * Run <code>action</code> and, unless it fails, join the holders.
+     */
+    public <T> T acquire(final Action<T> action) throws MojoExecutionException, MojoFailureException {
+        return locked(() -> {
+            final T result = action.run(otherHolders() + ownCount());
+            adjust(1);
+            return result;
+        });
+    }
+
+    /**
+     * Leave the holders and run <code>action</code>, which should stop the server when no holder is left.
+     */
+    public <T> T release(final Action<T> action) throws MojoExecutionException, MojoFailureException {
+        return locked(() -> {
+            adjust(-1);
+            return action.run(otherHolders() + ownCount());
+        });
+    }
+
+    private <T> T locked(final Locked<T> body) throws MojoExecutionException, MojoFailureException {
+        synchronized (MONITOR) {
+            try {
+                Files.createDirectories(holders.toPath());
+                try (FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel()) {
+                    log.debug("[JBOSS] Waiting for " + lockFile);
+                    final FileLock lock = channel.lock();
+                    try {
+                        return body.run();
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to use server lease " + lockFile, e);
+            }
+        }
+    }
+
+    private interface Locked<T> {
+        T run() throws MojoExecutionException, MojoFailureException, IOException;
+    }
+
+    /**
+     * @return the number of times live processes other than this one hold the lease, stale holders are removed
+     *         on the way
+     */
+    private int otherHolders() throws IOException {
+        final long self = Processes.currentPid();
+        int count = 0;
+        final File[] files = holders.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        for (File file : files) {
+            final long pid;
+            try {
+                pid = Long.parseLong(file.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (pid == self) {
+                continue;
+            }
+            if (Processes.isAlive(pid)) {
+                count += read(file);
+            } else {
+                log.info("[JBOSS] Reclaiming the server lease of process " + pid + " which is gone");
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        return count;
+    }
+
+    private int ownCount() throws IOException {
+        return read(ownFile());
+    }
+
+    private void adjust(final int delta) throws IOException {
+        final File file = ownFile();
+        final int count = Math.max(0, read(file) + delta);
+        if (count == 0) {
+            Files.deleteIfExists(file.toPath());
+        } else {
+            Files.write(file.toPath(), Integer.toString(count).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private File ownFile() {
+        return new File(holders, Long.toString(Processes.currentPid()));
+    }
+
+    private static int read(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(new String(Files.readAllBytes(file.toPath()),
+                                                           StandardCharsets.UTF_8).trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.polopoly.jboss;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools used by the plugin. All threads are daemons so an abandoned pool never keeps maven alive.
+ */
+public final class Threads {
+
+    private Threads() {
+    }
+
+    public static ExecutorService newPool(final String name, final int size) {
+        return Executors.newFixedThreadPool(Math.max(1, size), daemonFactory(name));
+    }
+
+    public static ThreadFactory daemonFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "jboss-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static int defaultParallelism() {
+        return Math.min(8, Runtime.getRuntime().availableProcessors());
+    }
+}
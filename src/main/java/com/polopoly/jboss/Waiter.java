@@ -0,0 +1,113 @@
+package com.polopoly.jboss;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Polls a probe until it succeeds or a wall-clock deadline passes. The first retries come quickly and the
+ * interval then doubles up to a cap, so fast events are noticed fast without hammering slow ones.
+ */
+public class Waiter {
+
+    /**
+     * A probe returning a value once ready and <code>null</code> while not.
+     */
+    public interface Probe<T> {
+        T poll() throws MojoExecutionException;
+    }
+
+    /**
+     * A probe that is ready when it returns <code>true</code>.
+     */
+    public interface Condition {
+        boolean test() throws MojoExecutionException;
+    }
+
+    /**
+     * Checked before every attempt, throws to abandon the wait.
+     */
+    public interface Abort {
+        void check() throws MojoExecutionException;
+    }
+
+    private static final Object WAKE = new Object();
+
+    private final Log log;
+    private final long timeoutMillis;
+    private final long initialIntervalMillis;
+    private final long maxIntervalMillis;
+    private Abort abort;
+
+    public Waiter(final Log log, final long timeoutMillis, final long initialIntervalMillis, final long maxIntervalMillis) {
+        this.log = log;
+        this.timeoutMillis = timeoutMillis;
+        this.initialIntervalMillis = Math.max(1, initialIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.initialIntervalMillis, maxIntervalMillis);
+    }
+
+    /**
+     * Check <code>abort</code> before every attempt.
+     */
+    public Waiter abortOn(final Abort abort) {
+        this.abort = abort;
+        return this;
+    }
+
+    /**
+     * Cut short the current interval of every waiter, so something that wants them aborted is noticed at once.
+     */
+    public static void wakeUp() {
+        synchronized (WAKE) {
+            WAKE.notifyAll();
+        }
+    }
+
+    /**
+     * Wait for <code>condition</code> to become true.
+     *
+     * @return false if the deadline passed first
+     */
+    public boolean until(final String what, final Condition condition) throws MojoExecutionException {
+        return poll(what, () -> condition.test() ? Boolean.TRUE : null) != null;
+    }
+
+    /**
+     * Wait for <code>probe</code> to return a value.
+     *
+     * @return the value or <code>null</code> if the deadline passed first
+     */
+    public <T> T poll(final String what, final Probe<T> probe) throws MojoExecutionException {
+        final long start = System.nanoTime();
+        final long deadline = start + timeoutMillis * 1000000L;
+        long interval = initialIntervalMillis;
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            if (abort != null) {
+                abort.check();
+            }
+            final T value = probe.poll();
+            final long now = System.nanoTime();
+            if (value != null) {
+                log.debug(String.format("[JBOSS] Waited %d ms for %s (%d attempts)",
+                                        (now - start) / 1000000L, what, attempts));
+                return value;
+            }
+            final long remaining = (deadline - now) / 1000000L;
+            if (remaining <= 0) {
+                log.info(String.format("[JBOSS] Gave up waiting for %s after %d ms (%d attempts)",
+                                       what, (now - start) / 1000000L, attempts));
+                return null;
+            }
+            try {
+                synchronized (WAKE) {
+                    WAKE.wait(Math.min(interval, remaining));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for " + what, e);
+            }
+            interval = Math.min(interval * 2, maxIntervalMillis);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts zip archives using a bounded pool of writers. All directories are created up front so the writers
+ * only ever create files; entries larger than {@link #LARGE_ENTRY} are streamed through a direct buffer.
+ *
+ * Every file is written to a sibling temporary file that is then moved over the target, so an existing file is
+ * replaced rather than truncated: hard links to it, such as those into the {@link InstallCache}, and jars
+ * mapped by a running process keep their content.
+ */
+public class ZipExtractor {
+
+    static final long LARGE_ENTRY = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> HEAP_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect((int) LARGE_ENTRY));
+
+    private final int threads;
+
+    public ZipExtractor(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Extract every entry of <code>archive</code> into <code>target</code>.
+     */
+    public void extract(final File archive, final File target) throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            extract(zip, Collections.list(zip.entries()), target);
+        }
+    }
+
+    /**
+     * Extract the given entries of an open archive into <code>target</code>.
+     */
+    public void extract(final ZipFile zip, final Collection<? extends ZipEntry> entries, final File target)
+        throws IOException
+    {
+        final List<Target> files = new ArrayList<>();
+        final TreeSet<File> directories = new TreeSet<>();
+        for (ZipEntry entry : entries) {
+            final File file = resolve(target, entry.getName());
+            if (entry.isDirectory()) {
+                directories.add(file);
+            } else {
+                directories.add(file.getParentFile());
+                files.add(new Target(zip, entry, file));
+            }
+        }
+        writeAll(directories, files);
+    }
+
+    /**
+     * Write entries from (possibly) several archives, each to its own destination.
+     */
+    void writeAll(final Collection<File> directories, final List<Target> files) throws IOException {
+        for (File directory : directories) {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        if (threads <= 1 || files.size() == 1) {
+            for (Target file : files) {
+                write(file);
+            }
+            return;
+        }
+        final ExecutorService pool = Threads.newPool("unzip", threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(files.size());
+            for (final Target file : files) {
+                futures.add(pool.submit(() -> {
+                    write(file);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(final Target target) throws IOException {
+        final ZipEntry entry = target.entry;
+        final File tmp = new File(target.file.getParentFile(), target.file.getName() + ".unzip");
+        try {
+            try (InputStream in = target.zip.getInputStream(entry);
+                 FileOutputStream out = new FileOutputStream(tmp)) {
+                if (entry.getSize() >= LARGE_ENTRY) {
+                    copy(Channels.newChannel(in), out.getChannel());
+                } else {
+                    copy(in, out);
+                }
+            }
+            if (entry.getTime() != -1) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.setLastModified(entry.getTime());
+            }
+            replace(tmp.toPath(), target.file.toPath());
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw new IOException("Unable to extract " + entry.getName() + " to " + target.file, e);
+        }
+    }
+
+    private static void replace(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = HEAP_BUFFER.get();
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static void copy(final ReadableByteChannel in, final FileChannel out) throws IOException {
+        final ByteBuffer buffer = DIRECT_BUFFER.get();
+        buffer.clear();
+        while (in.read(buffer) >= 0 || buffer.position() > 0) {
+            buffer.flip();
+            out.write(buffer);
+            buffer.compact();
+        }
+    }
+
+    /**
+     * Determine whether <code>file</code> holds exactly what extracting <code>entry</code> would write. A file with
+     * the entry's size and modification time, as set by {@link #extract}, is taken to be it; any other file of the
+     * right size is compared by CRC, so edits that keep the size are still noticed.
+     */
+    static boolean isExtracted(final File file, final ZipEntry entry) throws IOException {
+        if (!file.isFile() || file.length() != entry.getSize()) {
+            return false;
+        }
+        if (entry.getTime() != -1 && file.lastModified() == entry.getTime()) {
+            return true;
+        }
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = HEAP_BUFFER.get();
+        try (InputStream in = new FileInputStream(file)) {
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    /**
+     * Resolve an entry name below <code>target</code>, refusing names that would escape it.
+     */
+    static File resolve(final File target, final String name) throws IOException {
+        final Path root = target.toPath().normalize();
+        final Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Entry " + name + " is outside of " + target);
+        }
+        return path.toFile();
+    }
+
+    /**
+     * An entry of an open archive and the file it should be written to.
+     */
+    static class Target {
+        final ZipFile zip;
+        final ZipEntry entry;
+        final File file;
+
+        Target(final ZipFile zip, final ZipEntry entry, final File file) {
+            this.zip = zip;
+            this.entry = entry;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.polopoly.jboss;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The size and CRC of every file of an installed tree, as read from the central directory of the archive(s)
+ * it was extracted from. Stored next to the installation so the next install can tell what actually changed.
+ */
+public class ZipManifest {
+
+    /**
+     * The name of the manifest file kept in the root of an installation.
+     */
+    public static final String FILE_NAME = ".install.manifest";
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Read the file entries from the central directory of an open archive.
+     */
+    public static ZipManifest of(final ZipFile zip) {
+        final ZipManifest manifest = new ZipManifest();
+        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+            final ZipEntry entry = e.nextElement();
+            if (!entry.isDirectory()) {
+                manifest.put(entry.getName(), new Entry(entry.getSize(), entry.getCrc()));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Load a stored manifest, returns <code>null</code> if there is none.
+     */
+    public static ZipManifest load(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final ZipManifest manifest = new ZipManifest();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line; (line = in.readLine()) != null; ) {
+                final String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    manifest.put(fields[2], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1], 16)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt manifest " + file, e);
+        }
+        return manifest;
+    }
+
+    public void store(final File file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.write(Long.toString(entry.getValue().size));
+                out.write('\t');
+                out.write(Long.toHexString(entry.getValue().crc));
+                out.write('\t');
+                out.write(entry.getKey());
+                out.newLine();
+            }
+        }
+    }
+
+    public void put(final String name, final Entry entry) {
+        entries.put(name, entry);
+    }
+
+    public Entry get(final String name) {
+        return entries.get(name);
+    }
+
+    public Set<String> names() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Size and CRC of a single file.
+     */
+    public static class Entry {
+        public final long size;
+        public final long crc;
+
+        public Entry(final long size, final long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry other = (Entry) o;
+            return size == other.size && crc == other.crc;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (size * 31 + crc);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Composes a distribution and its patches in a single pass. The central directories of all layers are read
+ * first and the final, last-writer-wins, set of files is worked out in memory; each file is then written
+ * exactly once, straight from the archive that wins it.
+ */
+public class ZipOverlay {
+
+    private final ZipExtractor extractor;
+    private final List<Layer> layers = new ArrayList<>();
+
+    public ZipOverlay(final ZipExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    /**
+     * Add a layer, later layers override earlier ones.
+     *
+     * @param prefix the directory, relative to the target, the archive is extracted to ("" for the root)
+     */
+    public ZipOverlay add(final File archive, final String prefix) {
+        layers.add(new Layer(archive, prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/"));
+        return this;
+    }
+
+    /**
+     * Write the composed tree to <code>target</code>.
+     *
+     * @param previous the manifest of what is already installed in <code>target</code>, files it shows to be
+     *                 identical, and that still hold that content on disk, are not written again. May be
+     *                 <code>null</code>.
+     * @return the manifest of the composed tree
+     */
+    public ZipManifest apply(final File target, final ZipManifest previous) throws IOException {
+        final List<ZipFile> open = new ArrayList<>();
+        try {
+            final Map<String, ZipExtractor.Target> winners = new LinkedHashMap<>();
+            final TreeSet<File> directories = new TreeSet<>();
+            for (Layer layer : layers) {
+                final ZipFile zip = new ZipFile(layer.archive);
+                open.add(zip);
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                    final ZipEntry entry = e.nextElement();
+                    final String name = layer.prefix + entry.getName();
+                    final File file = ZipExtractor.resolve(target, name);
+                    if (entry.isDirectory()) {
+                        directories.add(file);
+                    } else {
+                        winners.put(name, new ZipExtractor.Target(zip, entry, file));
+                    }
+                }
+            }
+
+            final ZipManifest manifest = new ZipManifest();
+            final List<ZipExtractor.Target> files = new ArrayList<>();
+            for (Map.Entry<String, ZipExtractor.Target> winner : winners.entrySet()) {
+                final ZipExtractor.Target file = winner.getValue();
+                final ZipManifest.Entry entry = new ZipManifest.Entry(file.entry.getSize(), file.entry.getCrc());
+                manifest.put(winner.getKey(), entry);
+                directories.add(file.file.getParentFile());
+                if (previous == null || !entry.equals(previous.get(winner.getKey()))
+                    || !ZipExtractor.isExtracted(file.file, file.entry)) {
+                    files.add(file);
+                }
+            }
+            extractor.writeAll(directories, files);
+            return manifest;
+        } finally {
+            for (ZipFile zip : open) {
+                zip.close();
+            }
+        }
+    }
+
+    private static class Layer {
+        final File archive;
+        final String prefix;
+
+        Layer(final File archive, final String prefix) {
+            this.archive = archive;
+            this.prefix = prefix;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Brings a directory previously extracted from an archive up to date with a new version of that archive, by
+ * comparing the archive's central directory with the {@link ZipManifest} written by the previous sync. Only
+ * entries that changed, or whose file on disk no longer holds the extracted content (it went missing, or was
+ * patched or edited since), are written; so a sync always restores the archive's version of every file.
+ */
+public class ZipSync {
+
+    private final ZipExtractor extractor;
+
+    public ZipSync(final ZipExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    /**
+     * Synchronise <code>target</code> with <code>archive</code>.
+     *
+     * @param deletable which files that are no longer in the archive may be removed from <code>target</code>
+     * @return what was written and deleted
+     */
+    public Result sync(final File archive, final File target, final File manifestFile, final Predicate<String> deletable)
+        throws IOException
+    {
+        final ZipManifest previous = ZipManifest.load(manifestFile);
+        final Result result = new Result();
+        try (ZipFile zip = new ZipFile(archive)) {
+            final ZipManifest current = ZipManifest.of(zip);
+            final List<ZipEntry> changed = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                final ZipEntry entry = e.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final File file = new File(target, entry.getName());
+                if (previous == null
+                    || !current.get(entry.getName()).equals(previous.get(entry.getName()))
+                    || !ZipExtractor.isExtracted(file, entry)) {
+                    changed.add(entry);
+                    result.written.add(entry.getName());
+                }
+            }
+            extractor.extract(zip, changed, target);
+
+            if (previous != null) {
+                for (String name : previous.names()) {
+                    if (current.get(name) == null && deletable.test(name)) {
+                        final File file = new File(target, name);
+                        if (file.isFile() && !file.delete()) {
+                            throw new IOException("Cannot delete " + file);
+                        }
+                        result.deleted.add(name);
+                    }
+                }
+            }
+            current.store(manifestFile);
+        }
+        return result;
+    }
+
+    /**
+     * The entry names written and deleted by a sync.
+     */
+    public static class Result {
+        public final List<String> written = new ArrayList<>();
+        public final List<String> deleted = new ArrayList<>();
+
+        public boolean isUnchanged() {
+            return written.isEmpty() && deleted.isEmpty();
+        }
+    }
+}
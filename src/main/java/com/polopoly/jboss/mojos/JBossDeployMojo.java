@@ -1,15 +1,36 @@
 package com.polopoly.jboss.mojos;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import com.polopoly.jboss.ArtifactData;
+import com.polopoly.jboss.ArtifactDeployData;
+import com.polopoly.jboss.DeploymentLedger;
+import com.polopoly.jboss.FileTrees;
 import com.polopoly.jboss.JBossOperations;
+import com.polopoly.jboss.Threads;
+import com.polopoly.jboss.ZipSync;
 
 /**
  * Will deploy files into a running JBoss instance
@@ -31,54 +52,404 @@ public class JBossDeployMojo extends JBossInstallMojo {
      * 
      * @parameter
      */
-    protected ArtifactData[] deployments = new ArtifactData[0];
+    protected ArtifactDeployData[] deployments = new ArtifactDeployData[0];
+
+    /**
+     * The number of deployments of one <code>deployGroup</code> submitted to JBoss concurrently. The default, 1,
+     * deploys one artifact at a time in declaration order, so deployments may depend on the ones declared before
+     * them; raise it only once dependent deployments are put in later groups.
+     *
+     * @parameter default-value="1" expression="${jboss.deployThreads}"
+     */
+    protected int deployThreads;
+
+    /**
+     * Skip redeploying artifacts that are byte-identical to what is already deployed in the running server,
+     * according to the ledger kept in <code>jbossHome</code>.
+     *
+     * @parameter default-value="true" expression="${jboss.skipUnchangedDeployments}"
+     */
+    protected boolean skipUnchangedDeployments;
+
+    /**
+     * Unpack deployments into the deploy directory of the server and deploy them exploded. Later deploys only
+     * write the entries that changed; changes limited to static resources of a war (anything outside
+     * <code>WEB-INF</code> and <code>META-INF</code>) are picked up without a redeploy.
+     *
+     * @parameter default-value="false" expression="${jboss.explodedDeployments}"
+     */
+    protected boolean explodedDeployments;
+
+    /**
+     * Copy deployments into the deploy directory of the server and deploy them from there. The start goal
+     * copies them before JBoss is launched, so they are deployed by the boot scan.
+     *
+     * @parameter default-value="false" expression="${jboss.prestageDeployments}"
+     */
+    protected boolean prestageDeployments;
 
 
     public void execute() throws MojoExecutionException, MojoFailureException {
         info("Deploying artifacts");
+        prefetchArtifacts();
         deployAndWait();
     }
 
+    @Override
+    protected void collectArtifacts(List<ArtifactData> artifacts) {
+        artifacts.addAll(Arrays.asList(deployments));
+    }
+
     protected void deployAndWait() throws MojoExecutionException, MojoFailureException {
-        JBossOperations operations = new JBossOperations(connect(false));
-        if (file != null) {
-            redeploy(operations, file);
-        }
+        deployAndWait(deployments, true);
+    }
+
+    /**
+     * Deploy the given artifacts, and <code>file</code> if <code>deployFile</code> is set, and wait for them
+     * to be deployed. Every artifact is deployed as soon as it is resolved, concurrently with the others in
+     * its <code>deployGroup</code> when <code>deployThreads</code> allows; groups are deployed one after the
+     * other.
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    protected void deployAndWait(ArtifactData[] artifacts, boolean deployFile)
+        throws MojoExecutionException, MojoFailureException
+    {
+        JBossOperations operations = operations(false);
+        DeploymentLedger ledger = skipUnchangedDeployments ? loadLedger() : null;
+        String startId = ledger != null ? operations.getStartId() : null;
 
-        Artifact[] deploymentArtifacts = resolveArtifacts(deployments);
-        for (Artifact artifact : deploymentArtifacts) {
-            redeploy(operations, artifact.getFile());
+        // Start resolving everything, each deployment then only waits for its own artifact
+        SortedMap<Integer, List<Callable<URL>>> groups = new TreeMap<>();
+        if (deployFile && file != null) {
+            groups.computeIfAbsent(Integer.MIN_VALUE, g -> new ArrayList<>())
+                  .add(() -> redeployIfChanged(operations, ledger, startId, file));
         }
-        for (Artifact artifact : deploymentArtifacts) {
-            waiForDeployment(operations, artifact.getFile());
+        for (ArtifactData artifact : artifacts) {
+            final Future<Artifact> resolved = resolveAsync(artifact);
+            groups.computeIfAbsent(deployGroup(artifact), g -> new ArrayList<>())
+                  .add(() -> redeployIfChanged(operations, ledger, startId, await(resolved).getFile()));
         }
+
+        deployGroups(operations, ledger, groups);
         info("All deployments done!");
     }
 
-    protected void waiForDeployment(JBossOperations operations, File file) throws MojoExecutionException {
+    /**
+     * Deploy files, all concurrently, and wait for them to be deployed.
+     * @throws MojoExecutionException
+     */
+    protected void deployFilesAndWait(Collection<File> files) throws MojoExecutionException {
+        JBossOperations operations = operations(false);
+        DeploymentLedger ledger = skipUnchangedDeployments ? loadLedger() : null;
+        String startId = ledger != null ? operations.getStartId() : null;
+
+        List<Callable<URL>> tasks = new ArrayList<>();
+        for (final File deployed : files) {
+            tasks.add(() -> redeployIfChanged(operations, ledger, startId, deployed));
+        }
+        deployGroups(operations, ledger, new TreeMap<>(Collections.singletonMap(0, tasks)));
+    }
+
+    private void deployGroups(JBossOperations operations,
+                              DeploymentLedger ledger,
+                              SortedMap<Integer, List<Callable<URL>>> groups) throws MojoExecutionException {
+        ExecutorService pool = deployThreads > 1 ? Threads.newPool("deploy", deployThreads) : null;
         try {
-            waitForDeployment(operations, file.toURI().toURL());
-        } catch (MalformedURLException e) {
-            throw new MojoExecutionException("The file path could not be converted into a url", e);
+            for (List<Callable<URL>> group : groups.values()) {
+                List<URL> urls = submitAll(pool, group);
+                waitForDeployments(operations, urls);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        if (ledger != null) {
+            try {
+                ledger.store();
+            } catch (IOException e) {
+                warn("Unable to store deployment ledger: %s", e.getMessage());
+            }
+        }
+    }
+
+    private URL redeployIfChanged(JBossOperations operations, DeploymentLedger ledger, String startId, File deployed)
+        throws MojoExecutionException
+    {
+        boolean staged = (explodedDeployments || prestageDeployments) && deployed.isFile();
+        URL url = staged ? stagedURL(deployed) : toURL(deployed);
+        try {
+            if (ledger != null && ledger.isUnchanged(url, deployed, startId) && operations.isDeployed(url)) {
+                info("Unchanged, not redeploying: " + url);
+                return url;
+            }
+            if (!staged) {
+                redeploy(operations, url);
+            } else if (stage(deployed)) {
+                redeployStaged(operations, deployed, url);
+            } else if (!operations.isDeployed(url)) {
+                redeploy(operations, url);
+            } else {
+                info("Up to date in the deploy directory, not redeploying: " + url);
+            }
+            if (ledger != null) {
+                ledger.record(url, deployed, startId);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read " + deployed, e);
+        }
+        return url;
+    }
+
+    /**
+     * Record deployments made outside of {@link #deployAndWait()} in the ledger.
+     * @param deployed the deployed file for each url
+     */
+    protected void recordDeployed(JBossOperations operations, Map<URL, File> deployed) {
+        DeploymentLedger ledger = skipUnchangedDeployments ? loadLedger() : null;
+        if (ledger == null) {
+            return;
+        }
+        String startId = operations.getStartId();
+        try {
+            for (Map.Entry<URL, File> entry : deployed.entrySet()) {
+                ledger.record(entry.getKey(), entry.getValue(), startId);
+            }
+            ledger.store();
+        } catch (IOException e) {
+            warn("Unable to store deployment ledger: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Have JBoss pick up a deployment that changed in its deploy directory. Going through the deployment
+     * scanner keeps it from redeploying the change a second time on its next scan; the scanner registers the
+     * deployment under the url {@link #stagedURL} gives, which is the one waited for. The scanner only notices
+     * a change to an exploded deployment through its descriptor, so one without a descriptor is redeployed
+     * directly once it is deployed.
+     */
+    protected void redeployStaged(JBossOperations operations, File archive, URL url) throws MojoExecutionException {
+        File staged = stagedLocation(archive);
+        if (staged.isDirectory() && !hasWatchedDescriptor(staged, archive.getName()) && operations.isDeployed(url)) {
+            redeploy(operations, url);
+            return;
+        }
+        info("Deploying: " + url);
+        if (!operations.scanDeployments()) {
+            operations.redeploy(url);
         }
     }
 
+    /**
+     * Where an archive is staged in the deploy directory of the server, exploded or copied.
+     */
+    protected File stagedLocation(File archive) {
+        return new File(jbossHome, "server/" + serverId + "/deploy/" + archive.getName());
+    }
+
+    /**
+     * The url <code>archive</code> is deployed from once staged. An exploded deployment is a directory, whose url
+     * the deployment scanner always ends with a "/", whether or not it has been unpacked yet.
+     */
+    protected URL stagedURL(File archive) throws MojoExecutionException {
+        URL url = toURL(stagedLocation(archive));
+        if (explodedDeployments && !url.getPath().endsWith("/")) {
+            try {
+                url = new URL(url.toExternalForm() + "/");
+            } catch (MalformedURLException e) {
+                throw new MojoExecutionException("The file path could not be converted into a url", e);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Bring the staged copy of <code>archive</code> up to date.
+     * @return whether the deployment has to be redeployed
+     */
+    protected boolean stage(File archive) throws IOException {
+        return explodedDeployments ? syncExploded(archive) : copyIfChanged(archive);
+    }
+
+    private boolean copyIfChanged(File archive) throws IOException {
+        File staged = stagedLocation(archive);
+        if (staged.isFile() && staged.length() == archive.length() && staged.lastModified() == archive.lastModified()) {
+            return false;
+        }
+        // Copy next to the deploy directory and move in place, so the deployment scanner never sees half a file
+        File staging = new File(jbossHome, "server/" + serverId + "/data/staging/" + archive.getName());
+        Files.createDirectories(staging.getParentFile().toPath());
+        Files.createDirectories(staged.getParentFile().toPath());
+        Files.copy(archive.toPath(), staging.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(staging.toPath(), staged.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Explode <code>archive</code> into the deploy directory, or bring the exploded copy up to date.
+     * @return whether the deployment has to be redeployed
+     */
+    private boolean syncExploded(File archive) throws IOException {
+        File directory = stagedLocation(archive);
+        File manifest = new File(jbossHome, "server/" + serverId + "/data/exploded/" + archive.getName() + ".manifest");
+        ZipSync sync = new ZipSync(newExtractor());
+        if (!directory.isDirectory()) {
+            // Unpack next to the manifest and move in place, so the deployment scanner never sees half a deployment
+            File staging = new File(manifest.getParentFile(), archive.getName());
+            FileTrees.delete(staging.toPath());
+            Files.deleteIfExists(manifest.toPath());
+            info("Exploding '%s' to '%s'", archive, directory);
+            sync.sync(archive, staging, manifest, name -> true);
+            Files.createDirectories(directory.getParentFile().toPath());
+            Files.move(staging.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+
+        ZipSync.Result result = sync.sync(archive, directory, manifest, name -> true);
+        debug("%s: %d files written, %d files deleted", directory, result.written.size(), result.deleted.size());
+        if (result.isUnchanged()) {
+            return false;
+        }
+        boolean war = archive.getName().endsWith(".war");
+        for (String name : concat(result.written, result.deleted)) {
+            if (!war || name.startsWith("WEB-INF/") || name.startsWith("META-INF/")) {
+                if (hasWatchedDescriptor(directory, archive.getName())) {
+                    //noinspection ResultOfMethodCallIgnored
+                    new File(directory, watchedDescriptor(archive.getName())).setLastModified(
+                        System.currentTimeMillis());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The descriptor the JBoss deployment scanner watches for changes to an exploded deployment of the given
+     * type, or null for a type it has none for.
+     */
+    static String watchedDescriptor(String archiveName) {
+        String name = archiveName.toLowerCase(Locale.ENGLISH);
+        if (name.endsWith(".war")) {
+            return "WEB-INF/web.xml";
+        } else if (name.endsWith(".ear")) {
+            return "META-INF/application.xml";
+        } else if (name.endsWith(".jar")) {
+            return "META-INF/ejb-jar.xml";
+        } else if (name.endsWith(".sar")) {
+            return "META-INF/jboss-service.xml";
+        } else if (name.endsWith(".rar")) {
+            return "META-INF/ra.xml";
+        }
+        return null;
+    }
+
+    private static boolean hasWatchedDescriptor(File directory, String archiveName) {
+        String descriptor = watchedDescriptor(archiveName);
+        return descriptor != null && new File(directory, descriptor).isFile();
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    private DeploymentLedger loadLedger() {
+        File ledgerFile = new File(jbossHome, "deployment-ledger.properties");
+        try {
+            return new DeploymentLedger(ledgerFile);
+        } catch (IOException e) {
+            warn("Ignoring unreadable deployment ledger %s: %s", ledgerFile, e.getMessage());
+            return null;
+        }
+    }
+
+    protected static int deployGroup(ArtifactData artifact) {
+        return artifact instanceof ArtifactDeployData ? ((ArtifactDeployData) artifact).deployGroup : 0;
+    }
+
+    /**
+     * Run all tasks, on <code>pool</code> if there is one, and wait for all of them even if some fail.
+     * @throws MojoExecutionException the first failure
+     */
+    private static <T> List<T> submitAll(ExecutorService pool, List<Callable<T>> tasks) throws MojoExecutionException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<>(task);
+            if (pool != null) {
+                pool.execute(future);
+            } else {
+                future.run();
+            }
+            futures.add(future);
+        }
+        List<T> results = new ArrayList<>();
+        MojoExecutionException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(await(future));
+            } catch (MojoExecutionException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    protected void waiForDeployment(JBossOperations operations, File file) throws MojoExecutionException {
+        waitForDeployment(operations, toURL(file));
+    }
+
     protected void waitForDeployment(JBossOperations operations, URL url) throws MojoExecutionException {
-        info("Waiting for: " + url);
-        for (int i = 0; i < retry && !operations.isDeployed(url); ++i)
-        {
-            sleep("Thread interrupted while waiting for deplyment");
+        waitForDeployments(operations, Collections.singletonList(url));
+    }
+
+    /**
+     * Wait for all <code>urls</code> to be deployed, polling their state together. Fails as soon as the
+     * MainDeployer reports incomplete deployments among them, or when <code>retry</code> * <code>retryWait</code>
+     * seconds have passed.
+     * @throws MojoExecutionException
+     */
+    protected void waitForDeployments(JBossOperations operations, Collection<URL> urls) throws MojoExecutionException {
+        final List<URL> pending = new ArrayList<>(urls);
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (URL url : pending) {
+            info("Waiting for: " + url);
+        }
+        boolean deployed = waitUntil("deployment of " + pending.size() + " artifact(s)", () -> {
+            pending.removeAll(operations.deployedOf(pending));
+            if (!pending.isEmpty()) {
+                operations.checkIncompleteDeployments(pending);
+            }
+            return pending.isEmpty();
+        });
+        if (!deployed) {
+            throw new MojoExecutionException("Timed out waiting for deployment of " + pending);
         }
     }
 
-    protected void redeploy(JBossOperations operations, File file) throws MojoExecutionException {
+    protected URL toURL(File file) throws MojoExecutionException {
         try {
-            redeploy(operations, file.toURI().toURL());
+            return file.toURI().toURL();
         } catch (MalformedURLException e) {
             throw new MojoExecutionException("The file path could not be converted into a url", e);
         }
     }
 
+    protected void redeploy(JBossOperations operations, File file) throws MojoExecutionException {
+        redeploy(operations, toURL(file));
+    }
+
     protected void redeploy(JBossOperations operations, URL url) throws MojoExecutionException {
         info("Deploying: " + url);
         operations.redeploy(url);
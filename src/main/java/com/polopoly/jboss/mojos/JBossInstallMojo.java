@@ -1,9 +1,13 @@
 package com.polopoly.jboss.mojos;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -13,7 +17,15 @@ import org.codehaus.plexus.util.Expand;
 import com.polopoly.jboss.AbstractJBossMBeanMojo;
 import com.polopoly.jboss.AdmDistribution;
 import com.polopoly.jboss.ArtifactData;
+import com.polopoly.jboss.FileTrees;
+import com.polopoly.jboss.Fingerprint;
+import com.polopoly.jboss.InstallCache;
 import com.polopoly.jboss.JBossDistribution;
+import com.polopoly.jboss.Threads;
+import com.polopoly.jboss.ZipExtractor;
+import com.polopoly.jboss.ZipManifest;
+import com.polopoly.jboss.ZipOverlay;
+import com.polopoly.jboss.ZipSync;
 
 /**
  * Will download and install a pre-configured JBoss Application Server
@@ -134,8 +146,50 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
      */
     protected boolean admUpdate;
 
+    /**
+     * When repeating the adm install (SNAPSHOT distribution or <code>admUpdate</code>), only write the entries
+     * that changed since the previous install and delete the ones removed from <code>lib</code>, instead of
+     * emptying <code>lib</code> and expanding the whole distribution again.
+     * @parameter default-value="true" expression="${adm.incrementalUpdate}"
+     */
+    protected boolean admIncrementalUpdate;
+
+    /**
+     * Install JBoss and ADM Content Services from a cache of fully patched installations shared by all builds on
+     * this machine, instead of expanding the distribution and its patches every time.
+     * @parameter default-value="false" expression="${jboss.installCache}"
+     */
+    protected boolean installCache;
+
+    /**
+     * The location of the shared installation cache.
+     * @parameter default-value="${user.home}/.m2/jboss-install-cache" expression="${jboss.installCacheDirectory}"
+     */
+    protected File installCacheDirectory;
+
+    /**
+     * Extract distributions and patches with a pool of parallel writers. When false the archives are expanded
+     * one entry at a time with plexus Expand.
+     * @parameter default-value="true" expression="${jboss.parallelExtraction}"
+     */
+    protected boolean parallelExtraction;
+
+    /**
+     * The number of parallel writers used when extracting archives, defaults to the number of processors (at most 8).
+     * @parameter expression="${jboss.extractThreads}"
+     */
+    protected int extractThreads;
+
+    /**
+     * Install ADM Content Services and JBoss at the same time, the two installations are independent.
+     * @parameter default-value="false" expression="${jboss.parallelInstall}"
+     */
+    protected boolean parallelInstall;
+
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        prefetchArtifacts();
+
         if (!reinstall && isAdmInstalled()) {
             info("ADM Content Services are already installed?");
             throw new MojoExecutionException("There is already a directory called " + new File(admHome, "lib").getAbsolutePath());
@@ -146,8 +200,74 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
             throw new MojoExecutionException("There is already a directory called " + new File(jbossHome, "bin").getAbsolutePath());
         }
 
-        installAdmIfNotAlreadyInstalled();
-        installIfNotAlreadyInstalled();
+        installAll();
+    }
+
+    /**
+     * Install adm and jboss if needed, concurrently when <code>parallelInstall</code> is set.
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    protected void installAll() throws MojoExecutionException, MojoFailureException {
+        if (!parallelInstall) {
+            installAdmIfNotAlreadyInstalled();
+            installIfNotAlreadyInstalled();
+            return;
+        }
+        final ExecutorService pool = Threads.newPool("install", 1);
+        try {
+            final Future<Void> adm = pool.submit(() -> {
+                installAdmIfNotAlreadyInstalled();
+                return null;
+            });
+            try {
+                installIfNotAlreadyInstalled();
+            } catch (MojoExecutionException | MojoFailureException | RuntimeException e) {
+                // Let adm finish (or fail) before reporting, so nothing is left extracting in the background
+                try {
+                    await(adm);
+                } catch (MojoExecutionException | RuntimeException admFailure) {
+                    e.addSuppressed(admFailure);
+                }
+                throw e;
+            }
+            await(adm);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    protected void collectArtifacts(List<ArtifactData> artifacts) {
+        collectInstallArtifacts(artifacts);
+    }
+
+    /**
+     * Where jboss:start records the ports of the server it started, next to <code>jbossLock</code>.
+     */
+    @Override
+    protected File portsFile() {
+        return jbossLock != null ? new File(jbossLock.getParentFile(), "ports.properties") : null;
+    }
+
+    /**
+     * Add the distributions and patches needed to install jboss and adm.
+     * @param artifacts
+     */
+    protected void collectInstallArtifacts(List<ArtifactData> artifacts) {
+        if (reinstall || !isInstalled()) {
+            if (jbossDistributionFile == null) {
+                artifacts.add(jbossDistribution);
+            }
+            artifacts.addAll(Arrays.asList(jbossPatches));
+            artifacts.addAll(Arrays.asList(serverPatches));
+        }
+        if (admDistributionFile == null && admDistribution != null) {
+            artifacts.add(admDistribution);
+        }
+        if (shouldStartAdm() && (reinstall || !isAdmInstalled())) {
+            artifacts.addAll(Arrays.asList(admPatches));
+        }
     }
 
     /**
@@ -178,14 +298,26 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
                 if (jbossDistributionFile == null) {
                     jbossDistributionFile = resolveArtifact(jbossDistribution).getFile();
                 }
-                resolveArtifacts(jbossPatches);
-                resolveArtifacts(serverPatches);
+                final List<File> jbossPatchList = patchFiles(jbossPatches, jbossPatchFiles);
+                final List<File> serverPatchList = patchFiles(serverPatches, serverPatchFiles);
 
                 // Install jboss
-                info("Installing '%s' to '%s'", jbossDistributionFile, jbossHome);
-                unzip(jbossDistributionFile, jbossHome);
-                applyPatches(jbossPatches, jbossPatchFiles, jbossHome);
-                applyPatches(serverPatches, serverPatchFiles, new File(jbossHome, "server/" + serverId));
+                try {
+                    if (installCache) {
+                        final String key = new Fingerprint()
+                            .add("jboss").add(jbossDistributionFile)
+                            .add("jbossPatches").addAll(jbossPatchList)
+                            .add("serverPatches/" + serverId).addAll(serverPatchList)
+                            .toHex();
+                        newInstallCache().install(key, jbossHome,
+                                                  directory -> installJBoss(directory, jbossPatchList, serverPatchList));
+                    } else {
+                        installJBoss(jbossHome, jbossPatchList, serverPatchList);
+                    }
+                } catch (Exception e) {
+                    discardFailedInstall(jbossHome, "bin");
+                    throw e;
+                }
 
                 // Make sure the execution flag is lit
                 //noinspection ResultOfMethodCallIgnored
@@ -196,6 +328,22 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
         }
     }
 
+    private void installJBoss(final File target,
+                              final List<File> jbossPatchList,
+                              final List<File> serverPatchList) throws MojoExecutionException {
+        info("Installing '%s' to '%s'", jbossDistributionFile, target);
+        if (parallelExtraction) {
+            final ZipOverlay overlay = new ZipOverlay(newExtractor()).add(jbossDistributionFile, "");
+            addPatches(overlay, jbossPatchList, "", target);
+            addPatches(overlay, serverPatchList, "server/" + serverId, target);
+            applyOverlay(overlay, target);
+        } else {
+            unzip(jbossDistributionFile, target);
+            applyPatches(jbossPatchList, target);
+            applyPatches(serverPatchList, new File(target, "server/" + serverId));
+        }
+    }
+
     /**
      * Will install a new adm if either <code>reinstall</code> is set or there is no adm at the <code>admHome</code> location.
      * @throws MojoExecutionException
@@ -211,7 +359,12 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
             try {
                 setupAdmDistributionFile();
 
-                doInstallAdm(true);
+                try {
+                    doInstallAdm(true);
+                } catch (Exception e) {
+                    discardFailedInstall(admHome, "lib");
+                    throw e;
+                }
             } catch (Exception e) {
                 throw new MojoExecutionException("Configure Download/Configure ADM Content Services", e);
             }
@@ -239,7 +392,12 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
                             " --stop -p " + admPort);
                     }
                     info("repeat adm install");
-                    doInstallAdm(false);
+                    try {
+                        doInstallAdm(false);
+                    } catch (Exception e) {
+                        discardFailedInstall(admHome, "lib");
+                        throw e;
+                    }
                 }
             } catch (Exception e) {
                 throw new MojoExecutionException("Configure Download/Configure ADM Content Services", e);
@@ -247,6 +405,20 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
         }
     }
 
+    /**
+     * Remove the directory that marks <code>home</code> as installed, and the manifest of the previous install, after
+     * an install into it failed part way, so the next run installs it again instead of using a half-written tree.
+     */
+    private void discardFailedInstall(final File home, final String marker) {
+        warn("Removing incomplete install in '%s'", home);
+        try {
+            FileTrees.delete(new File(home, marker).toPath());
+            FileTrees.delete(new File(home, ZipManifest.FILE_NAME).toPath());
+        } catch (IOException e) {
+            warn("Unable to remove '%s': %s", new File(home, marker), e.getMessage());
+        }
+    }
+
     private void setupAdmDistributionFile() throws MojoExecutionException {
         if (admDistributionFile == null) {
             if (admDistribution == null) {
@@ -262,14 +434,40 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
 
     private void doInstallAdm(final boolean applyPatches) throws MojoExecutionException {
         // Install adm
-        info("Installing '%s' to '%s'", admDistributionFile, admHome);
         if (!applyPatches) {
-            info("Empty lib directory");
-            emptyDirectory(new File(admHome, "lib"));
-        }
-        unzip(admDistributionFile, admHome);
-        if (applyPatches) {
-        applyPatches(admPatches, admPatchFiles, admHome);
+            final File manifest = new File(admHome, ZipManifest.FILE_NAME);
+            if (admIncrementalUpdate && manifest.isFile()) {
+                info("Updating '%s' from '%s'", admHome, admDistributionFile);
+                try {
+                    final ZipSync.Result result = new ZipSync(newExtractor())
+                        .sync(admDistributionFile, admHome, manifest, name -> name.startsWith("lib/"));
+                    info("%d files written, %d files deleted", result.written.size(), result.deleted.size());
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Unable to update ADM Content Services", e);
+                }
+            } else {
+                info("Installing '%s' to '%s'", admDistributionFile, admHome);
+                info("Empty lib directory");
+                emptyDirectory(new File(admHome, "lib"));
+                unzip(admDistributionFile, admHome);
+                storeManifest(admDistributionFile, admHome);
+            }
+        } else {
+            final List<File> admPatchList = patchFiles(admPatches, admPatchFiles);
+            if (installCache) {
+                final String key;
+                try {
+                    key = new Fingerprint()
+                        .add("adm").add(admDistributionFile)
+                        .add("admPatches").addAll(admPatchList)
+                        .toHex();
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Unable to fingerprint ADM Content Services distribution", e);
+                }
+                newInstallCache().install(key, admHome, directory -> installAdm(directory, admPatchList));
+            } else {
+                installAdm(admHome, admPatchList);
+            }
         }
 
         // Make sure the execution flag is lit
@@ -277,6 +475,51 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
         new File(new File(admHome, "bin"), "run.sh").setExecutable(true);
     }
 
+    private void installAdm(final File target, final List<File> admPatchList) throws MojoExecutionException {
+        info("Installing '%s' to '%s'", admDistributionFile, target);
+        if (parallelExtraction) {
+            final ZipOverlay overlay = new ZipOverlay(newExtractor()).add(admDistributionFile, "");
+            addPatches(overlay, admPatchList, "", target);
+            applyOverlay(overlay, target);
+        } else {
+            unzip(admDistributionFile, target);
+            applyPatches(admPatchList, target);
+            storeManifest(admDistributionFile, target);
+        }
+    }
+
+    private void addPatches(final ZipOverlay overlay, final List<File> patchList, final String prefix, final File target) {
+        for (File patchFile : patchList) {
+            info("Applying patch '%s' to '%s'", patchFile, new File(target, prefix));
+            overlay.add(patchFile, prefix);
+        }
+    }
+
+    /**
+     * Write the overlay to <code>target</code>, skipping files the manifest of a previous install shows to be
+     * identical, and store the manifest of the result.
+     */
+    private void applyOverlay(final ZipOverlay overlay, final File target) throws MojoExecutionException {
+        final File manifestFile = new File(target, ZipManifest.FILE_NAME);
+        try {
+            overlay.apply(target, ZipManifest.load(manifestFile)).store(manifestFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to expand jboss archive", e);
+        }
+    }
+
+    private void storeManifest(final File archive, final File target) throws MojoExecutionException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            ZipManifest.of(zip).store(new File(target, ZipManifest.FILE_NAME));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write install manifest to " + target, e);
+        }
+    }
+
+    private InstallCache newInstallCache() {
+        return new InstallCache(installCacheDirectory, getLog());
+    }
+
     private void emptyDirectory(final File directory) {
         if (directory.exists() && directory.isDirectory()) {
             final File[] files = directory.listFiles();
@@ -292,24 +535,41 @@ public class JBossInstallMojo extends AbstractJBossMBeanMojo {
         }
     }
 
-    private List<File> applyPatches(ArtifactData[] patches, File[] patchFiles, File target) throws MojoExecutionException {
+    protected List<File> patchFiles(ArtifactData[] patches, File[] patchFiles) throws MojoExecutionException {
         List<File> patchList = new ArrayList<File>();
         for (Artifact artifact : resolveArtifacts(patches)) {
             patchList.add(artifact.getFile());
         }
         patchList.addAll(Arrays.asList(patchFiles));
+        return patchList;
+    }
+
+    private void applyPatches(List<File> patchList, File target) throws MojoExecutionException {
         for (File patchFile : patchList) {
             info("Applying patch '%s' to '%s'", patchFile, target);
             unzip(patchFile, target);
         }
-        return patchList;
     }
 
-    private static void unzip(File src, File target) throws MojoExecutionException {
+    protected ZipExtractor newExtractor() {
+        return new ZipExtractor(extractThreads > 0 ? extractThreads : Threads.defaultParallelism());
+    }
+
+    protected void unzip(File src, File target) throws MojoExecutionException {
+        if (parallelExtraction) {
+            try {
+                newExtractor().extract(src, target);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to expand jboss archive", e);
+            }
+            return;
+        }
         Expand expander = new Expand();
         expander.setSrc(src);
         expander.setDest(target);
         try {
+            // Expand overwrites in place, which must not reach the install cache through a hard link
+            FileTrees.breakLinks(target.toPath());
             expander.execute();
         } catch (Exception e) {
             throw new MojoExecutionException("Unable to expand jboss archive", e);
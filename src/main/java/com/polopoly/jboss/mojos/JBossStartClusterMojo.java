@@ -0,0 +1,336 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.polopoly.jboss.ArtifactData;
+import com.polopoly.jboss.FileTrees;
+import com.polopoly.jboss.JBossOperations;
+import com.polopoly.jboss.PortOffset;
+import com.polopoly.jboss.Threads;
+
+/**
+ * Will install a JBoss server, as the start goal does, and start <code>clusterNodes</code> copies of it side by
+ * side, each with its own port offset, then deploy all listed deployments to every node.
+ *
+ * @goal start-cluster
+ * @aggregator
+ */
+public class JBossStartClusterMojo
+    extends JBossStartMojo
+{
+    /**
+     * The number of JBoss nodes to start.
+     *
+     * @parameter default-value="2" expression="${jboss.clusterNodes}"
+     */
+    protected int clusterNodes;
+
+    /**
+     * Where the node directories are created, and the nodes recorded for the stop-cluster goal.
+     *
+     * @parameter default-value="${project.build.directory}/jboss-cluster" expression="${jboss.clusterDirectory}"
+     */
+    protected File clusterDirectory;
+
+    /**
+     * The nodes started by this goal.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * The configured naming port, which the node ports are offset from.
+     */
+    private String baseNamingPort;
+
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        if (clusterNodes < 1) {
+            throw new MojoExecutionException("clusterNodes must be at least 1, was " + clusterNodes);
+        }
+        // The nodes get ports of their own, ADM is shared with a server jboss:start may have moved
+        baseNamingPort = namingPort;
+        settlePorts();
+        try {
+            startCluster();
+        } catch (MojoExecutionException | MojoFailureException | RuntimeException e) {
+            printCapturedTails();
+            stopNodes();
+            stopAdm();
+            throw e;
+        }
+    }
+
+    private void startCluster()
+        throws MojoExecutionException, MojoFailureException
+    {
+        prefetchArtifacts();
+        installAll();
+        startAdmIfPortIsFree();
+
+        createNodes();
+        storeNodes(clusterDirectory, nodes);
+        for (Node node : nodes) {
+            spawn(node);
+        }
+
+        final SortedMap<Integer, List<File>> groups = new TreeMap<>();
+        if (file != null) {
+            groups.computeIfAbsent(Integer.MIN_VALUE, g -> new ArrayList<>()).add(file);
+        }
+        for (ArtifactData deployment : deployments) {
+            groups.computeIfAbsent(deployGroup(deployment), g -> new ArrayList<>())
+                  .add(resolveArtifact(deployment).getFile());
+        }
+
+        final ExecutorService pool = Threads.newPool("cluster", nodes.size());
+        try {
+            final List<Future<Void>> started = new ArrayList<>();
+            for (Node node : nodes) {
+                started.add(pool.submit(() -> {
+                    awaitStarted(node);
+                    rollOut(node, groups);
+                    return null;
+                }));
+            }
+            MojoExecutionException failure = null;
+            for (Future<Void> future : started) {
+                try {
+                    await(future);
+                } catch (MojoExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        info("All %d nodes started", nodes.size());
+    }
+
+    /**
+     * Build the node directories from the installed <code>jbossHome</code>: archives are hard linked, the
+     * configuration copied, and the <code>tmp</code>, <code>data</code>, <code>log</code> and <code>work</code>
+     * directories of the server left for each node to create.
+     */
+    private void createNodes()
+        throws MojoExecutionException
+    {
+        final Properties previous = loadNodes(clusterDirectory);
+        for (String name : previous.stringPropertyNames()) {
+            if (isPortInUse(previous.getProperty(name))) {
+                throw new MojoExecutionException(name + " of a previous start-cluster is still running on port "
+                                                 + previous.getProperty(name) + ", run stop-cluster first");
+            }
+        }
+        final boolean auto = "auto".equalsIgnoreCase(portOffset);
+        final int base = auto ? 0 : Integer.parseInt(portOffset.trim());
+        final Path template = jbossHome.toPath();
+        final Path server = template.resolve("server/" + serverId);
+        for (int i = 1; i <= clusterNodes; i++) {
+            final int offset = auto ? allocateOffset() : base + i * PortOffset.STEP;
+            final Node node = new Node("node" + i, new File(clusterDirectory, "node" + i),
+                                       Integer.toString(Integer.parseInt(baseNamingPort) + offset));
+            if (isPortInUse(node.namingPort)) {
+                throw new MojoExecutionException("There is already a process occupying port " + node.namingPort
+                                                 + " of " + node.name);
+            }
+            info("Creating %s in %s, port offset %d", node.name, node.home, offset);
+            try {
+                FileTrees.delete(node.home.toPath());
+                FileTrees.linkOrCopy(template, node.home.toPath(), nodeExcludes(server), getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to create " + node.home, e);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            new File(node.home, "bin/run.sh").setExecutable(true);
+            PortOffset.apply(new File(node.home, "server/" + serverId), offset, getLog());
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * The state directories of <code>server</code>, which every node creates for itself.
+     */
+    static Predicate<Path> nodeExcludes(final Path server) {
+        return path -> {
+            if (!server.equals(path.getParent())) {
+                return false;
+            }
+            final String name = path.getFileName().toString();
+            return name.equals("tmp") || name.equals("data") || name.equals("log") || name.equals("work");
+        };
+    }
+
+    private int allocateOffset()
+        throws MojoExecutionException
+    {
+        try {
+            return PortOffset.allocate(InetAddress.getByName(bindAddress), new int[] {Integer.parseInt(baseNamingPort)},
+                                       getLog());
+        } catch (UnknownHostException e) {
+            throw new MojoExecutionException("Invalid bind address " + bindAddress, e);
+        }
+    }
+
+    private void spawn(final Node node)
+        throws MojoExecutionException
+    {
+        final List<String> startOpts = new ArrayList<>();
+        if (startOptions != null && !startOptions.trim().isEmpty()) {
+            startOpts.addAll(Arrays.asList(startOptions.trim().split("\\s+")));
+        }
+        if (serverId != null) {
+            startOpts.add("-c");
+            startOpts.add(serverId);
+        }
+        startOpts.add("-b");
+        startOpts.add(bindAddress);
+
+        final ProcessBuilder pb = new ProcessBuilder(isWindows()
+                                                     ? createWindowsCommand(startOpts)
+                                                     : createUnixCommand(startOpts));
+        pb.directory(new File(node.home, "bin"));
+        pb.environment().put("JBOSS_HOME", node.home.getAbsolutePath());
+        setupEnvironments(environments, pb);
+
+        info("Starting %s", node.name);
+        try {
+            node.process = pb.start();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to start " + node.name, e);
+        }
+        pumpLog(node.process, node.name.toUpperCase(), node.name, new ArrayList<>(), new ArrayList<>());
+    }
+
+    private void awaitStarted(final Node node)
+        throws MojoExecutionException
+    {
+        final JBossOperations operations = operations(node.namingPort, true);
+        if (!waitUntil(node.name + " to start", () -> isStarted(operations))) {
+            throw new MojoExecutionException("Timed out waiting for " + node.name + " to start");
+        }
+        info("%s started, naming port %s", node.name, node.namingPort);
+    }
+
+    /**
+     * Deploy <code>groups</code>, one group after the other, to <code>node</code>.
+     */
+    private void rollOut(final Node node, final SortedMap<Integer, List<File>> groups)
+        throws MojoExecutionException
+    {
+        final JBossOperations operations = operations(node.namingPort, false);
+        for (List<File> group : groups.values()) {
+            final List<URL> urls = new ArrayList<>();
+            for (File deployment : group) {
+                final URL url = toURL(deployment);
+                info("Deploying %s to %s", url, node.name);
+                operations.redeploy(url);
+                urls.add(url);
+            }
+            waitForDeployments(operations, urls);
+        }
+    }
+
+    /**
+     * Shut down whatever nodes this goal started, best effort. Each node is reached through the operations of its
+     * own naming port, so a node that hangs does not hold up the others.
+     */
+    private void stopNodes() {
+        for (Node node : nodes) {
+            try {
+                if (isPortInUse(node.namingPort)) {
+                    operations(node.namingPort, false).shutDown();
+                    evictConnection(node.namingPort);
+                } else if (node.process != null) {
+                    node.process.destroy();
+                }
+            } catch (MojoExecutionException e) {
+                warn("cannot stop %s: %s", node.name, e.getMessage());
+                if (node.process != null) {
+                    node.process.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the nodes for the stop-cluster goal.
+     */
+    static void storeNodes(final File clusterDirectory, final List<Node> nodes)
+        throws MojoExecutionException
+    {
+        final Properties properties = new Properties();
+        for (Node node : nodes) {
+            properties.setProperty(node.name, node.namingPort);
+        }
+        final File file = new File(clusterDirectory, "nodes.properties");
+        try {
+            Files.createDirectories(clusterDirectory.toPath());
+            try (OutputStream out = new FileOutputStream(file)) {
+                properties.store(out, "Naming ports of the nodes started by jboss:start-cluster");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + file, e);
+        }
+    }
+
+    /**
+     * Read the naming ports of the recorded nodes, by node name.
+     */
+    static Properties loadNodes(final File clusterDirectory)
+        throws MojoExecutionException
+    {
+        final Properties properties = new Properties();
+        final File file = new File(clusterDirectory, "nodes.properties");
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to read " + file, e);
+            }
+        }
+        return properties;
+    }
+
+    static final class Node {
+        final String name;
+        final File home;
+        final String namingPort;
+        Process process;
+
+        Node(final String name, final File home, final String namingPort) {
+            this.name = name;
+            this.home = home;
+            this.namingPort = namingPort;
+        }
+    }
+}
@@ -1,23 +1,49 @@
 package com.polopoly.jboss.mojos;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 
+import com.polopoly.jboss.ArtifactData;
+import com.polopoly.jboss.ArtifactDeployData;
 import com.polopoly.jboss.Environment;
+import com.polopoly.jboss.FileTrees;
+import com.polopoly.jboss.Fingerprint;
 import com.polopoly.jboss.JBossOperations;
+import com.polopoly.jboss.LogCapture;
+import com.polopoly.jboss.LogPump;
+import com.polopoly.jboss.LogScanner;
+import com.polopoly.jboss.PortOffset;
+import com.polopoly.jboss.Processes;
+import com.polopoly.jboss.ServerLease;
+import com.polopoly.jboss.Threads;
+import com.polopoly.jboss.Waiter;
 
 /**
  * Will download, install, and start a pre-configured JBoss Application Server on localhost and deploy all listed deployments.
@@ -50,6 +76,161 @@ public class JBossStartMojo
      */
     protected boolean logToConsole;
 
+    /**
+     * Capture the output of JBoss and ADM to files in <code>logCaptureDirectory</code>, whether it is logged to
+     * the console or not, and print its last lines when the start fails.
+     *
+     * @parameter default-value="true" expression="${jboss.captureLogs}"
+     */
+    protected boolean captureLogs;
+
+    /**
+     * Where to capture the output of JBoss and ADM.
+     *
+     * @parameter default-value="${project.build.directory}/jboss-logs" expression="${jboss.logCaptureDirectory}"
+     */
+    protected File logCaptureDirectory;
+
+    /**
+     * Gzip the captured output.
+     *
+     * @parameter default-value="false" expression="${jboss.compressCapturedLogs}"
+     */
+    protected boolean compressCapturedLogs;
+
+    /**
+     * Size, in bytes, at which a capture file is rolled over.
+     *
+     * @parameter default-value="10485760" expression="${jboss.capturedLogMaxSize}"
+     */
+    protected long capturedLogMaxSize;
+
+    /**
+     * Number of capture files kept per process, the current one included.
+     *
+     * @parameter default-value="5" expression="${jboss.capturedLogFiles}"
+     */
+    protected int capturedLogFiles;
+
+    /**
+     * Number of captured lines printed when the start fails.
+     *
+     * @parameter default-value="200" expression="${jboss.failureTailLines}"
+     */
+    protected int failureTailLines;
+
+    /**
+     * When JBoss is already running, reuse it if it was started by this plugin with the same distribution,
+     * patches, server conf directory, deployments and start configuration, restart it if any of them differs, and
+     * go on with the deployments.
+     * Without this a running JBoss fails the start.
+     *
+     * @parameter default-value="false" expression="${jboss.reuseRunningServer}"
+     */
+    protected boolean reuseRunningServer;
+
+    /**
+     * Share the server with the other builds on this host using the same <code>jbossHome</code>. The first build
+     * to start takes a lease and starts the server, the next ones join the lease and only deploy, and stop only
+     * stops the server when the last holder of the lease releases it. Builds that died without stopping are
+     * detected by their pid and no longer count.
+     *
+     * @parameter default-value="false" expression="${jboss.sharedServer}"
+     */
+    protected boolean sharedServer;
+
+    /**
+     * Move every JBoss port, <code>namingPort</code> and <code>admPort</code> by this offset, so several servers
+     * can run on one host. Use <code>auto</code> to have a free offset allocated. The JBoss configuration under
+     * <code>server/serverId</code> is rewritten accordingly, with the original files kept as <code>.orig</code>,
+     * so <code>namingPort</code> and <code>admPort</code> must be left at the ports of that configuration. The
+     * ports chosen are exported as the project properties <code>jboss.portOffset</code>,
+     * <code>jboss.namingPort</code>, <code>jboss.admPort</code> and <code>jboss.httpPort</code>, and recorded
+     * next to <code>jbossLock</code> for every later goal, deploy and watch included.
+     *
+     * @parameter default-value="0" expression="${jboss.portOffset}"
+     */
+    protected String portOffset;
+
+    /**
+     * The port offset in effect, see <code>portOffset</code>.
+     */
+    protected int resolvedPortOffset;
+
+    /**
+     * Fail the start, or the deployments made by it, as soon as JBoss logs a line matching one of
+     * <code>logFailurePatterns</code> instead of waiting for a timeout.
+     *
+     * @parameter default-value="false" expression="${jboss.failOnLogPatterns}"
+     */
+    protected boolean failOnLogPatterns;
+
+    /**
+     * Regular expressions marking a failed boot or deployment in the JBoss output. Defaults to DeploymentException,
+     * Incomplete Deployment listing, BindException and OutOfMemoryError. Add <code> ERROR \[</code> to fail on
+     * any ERROR line logged through log4j, those of the deployed applications included.
+     *
+     * @parameter
+     */
+    protected String[] logFailurePatterns;
+
+    /**
+     * Number of lines shown on each side of a line matching <code>logFailurePatterns</code>.
+     *
+     * @parameter default-value="10" expression="${jboss.logFailureContext}"
+     */
+    protected int logFailureContext;
+
+    /**
+     * Spawn ADM Content Services and JBoss at the same time and track their readiness separately. Deployments
+     * that do not require ADM are deployed as soon as JBoss alone is ready.
+     *
+     * @parameter default-value="false" expression="${jboss.parallelStart}"
+     */
+    protected boolean parallelStart;
+
+    /**
+     * The line JBoss logs on stdout once it has started, used to notice readiness without polling JMX.
+     *
+     * @parameter default-value="Started in" expression="${jboss.startedMarker}"
+     */
+    protected String startedMarker;
+
+    /**
+     * Seconds the stop goal waits for the recorded JBoss processes to exit after asking JBoss to shut down, before
+     * sending them SIGTERM, and again before sending SIGKILL.
+     *
+     * @parameter default-value="60" expression="${jboss.stopGracePeriod}"
+     */
+    protected int stopGracePeriod;
+
+    /**
+     * The JBoss process we spawned, <code>run.sh</code> on unix.
+     */
+    private volatile Process jbossProcess;
+
+    /**
+     * Counted down when the JBoss process we spawned logs <code>startedMarker</code> or closes its stdout.
+     */
+    private volatile CountDownLatch jbossStartedLatch;
+
+    private volatile boolean jbossStartupLogged;
+
+    /**
+     * Watches the output of the JBoss process we spawned for failures, null when not watching.
+     */
+    private volatile LogScanner logScanner;
+
+    /**
+     * The deployments copied into the deploy directory before JBoss was launched, by resolved file.
+     */
+    private final Map<File, URL> prestaged = new HashMap<>();
+
+    /**
+     * The output captured from the processes spawned by this goal.
+     */
+    private final List<LogCapture> captures = new ArrayList<>();
+
     /**
      * The command to startIfNamingPortIsFree JBoss.
      */
@@ -104,17 +285,80 @@ public class JBossStartMojo
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
-        installAdmIfNotAlreadyInstalled();
+        try {
+            installAndStart();
+        } catch (MojoExecutionException | MojoFailureException | RuntimeException e) {
+            printCapturedTails();
+            throw e;
+        }
+    }
 
-        startAdmIfPortIsFree();
+    private void installAndStart()
+        throws MojoExecutionException, MojoFailureException
+    {
+        prefetchArtifacts();
 
-        if (isNamingPortFree()) {
-            info("JBoss is already running?");
-            throw new MojoExecutionException("There is already a process occupying port " + namingPort);
+        configurePorts(true);
+
+        if (!sharedServer) {
+            startServers();
+            return;
         }
 
-        // Do installation (if not installed)
-        installIfNotAlreadyInstalled();
+        final boolean joined = newServerLease().acquire(holders -> {
+            if (holders > 0 && isNamingPortInUse()) {
+                info("Joining the JBoss already leased %d time(s)", holders);
+                return true;
+            }
+            startServers();
+            return false;
+        });
+        if (joined) {
+            installAdmIfNotAlreadyInstalled();
+            startAdmIfPortIsFree();
+            deployAndWait();
+        }
+    }
+
+    private void startServers()
+        throws MojoExecutionException, MojoFailureException
+    {
+        forgetExitedProcesses();
+        if (reuseRunningServer && attachToRunningServer()) {
+            installAdmIfNotAlreadyInstalled();
+            startAdmIfPortIsFree();
+            deployAndWait();
+            return;
+        }
+
+        if (parallelStart) {
+            startInParallel();
+            return;
+        }
+
+        if (parallelInstall) {
+            if (isNamingPortInUse()) {
+                info("JBoss is already running?");
+                throw new MojoExecutionException("There is already a process occupying port " + namingPort);
+            }
+
+            // Install adm and jboss concurrently (if not installed)
+            installAll();
+
+            startAdmIfPortIsFree();
+        } else {
+            installAdmIfNotAlreadyInstalled();
+
+            startAdmIfPortIsFree();
+
+            if (isNamingPortInUse()) {
+                info("JBoss is already running?");
+                throw new MojoExecutionException("There is already a process occupying port " + namingPort);
+            }
+
+            // Do installation (if not installed)
+            installIfNotAlreadyInstalled();
+        }
 
         // Launch jboss
         startIfNamingPortIsFree();
@@ -129,31 +373,523 @@ public class JBossStartMojo
         }
     }
 
-    private void stop() {
+    /**
+     * Spawn adm and jboss right away, deploy what does not need adm once jboss is ready and the rest once both
+     * are ready.
+     *
+     * @throws MojoExecutionException
+     * @throws MojoFailureException
+     */
+    private void startInParallel()
+        throws MojoExecutionException, MojoFailureException
+    {
+        if (isNamingPortInUse()) {
+            info("JBoss is already running?");
+            throw new MojoExecutionException("There is already a process occupying port " + namingPort);
+        }
+
+        // Do installation (if not installed)
+        installAll();
+
+        spawnAdmIfPortIsFree();
+        spawnIfNamingPortIsFree();
+
+        final List<ArtifactDeployData> early = new ArrayList<>();
+        final List<ArtifactDeployData> late = new ArrayList<>();
+        for (ArtifactDeployData deployment : deployments) {
+            (shouldStartAdm() && deployment.requiresAdm ? late : early).add(deployment);
+        }
+
+        final ExecutorService pool = Threads.newPool("start", 1);
+        try {
+            final Future<Void> admReady = pool.submit(() -> {
+                awaitAdmStarted();
+                return null;
+            });
+
+            try {
+                awaitJBossStarted();
+                if (!early.isEmpty() || !shouldStartAdm()) {
+                    deployAndWait(early.toArray(new ArtifactData[0]), !shouldStartAdm());
+                }
+                await(admReady);
+                if (!late.isEmpty() || shouldStartAdm()) {
+                    deployAndWait(late.toArray(new ArtifactData[0]), shouldStartAdm());
+                }
+            } catch (MojoExecutionException | MojoFailureException e) {
+                info("Stopping jboss and adm due to failed start: " + e.getMessage());
+                admReady.cancel(true);
+                stop();
+                stopAdm();
+                throw e;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Settle <code>namingPort</code> and <code>admPort</code> according to <code>portOffset</code>. The ports of a
+     * server started earlier, recorded next to <code>jbossLock</code>, are used when it is still running or when
+     * <code>allocate</code> is false. Without a record and without <code>allocate</code>, an automatic offset
+     * falls back to the configured ports rather than claiming a new offset.
+     *
+     * @param allocate whether to pick, record and export the ports of a server about to be started
+     * @throws MojoExecutionException
+     */
+    protected void configurePorts(final boolean allocate)
+        throws MojoExecutionException
+    {
+        portsSettled = true;
+        final boolean auto = "auto".equalsIgnoreCase(portOffset);
+        final Properties recorded = loadPorts();
+        if (recorded != null && (!allocate || (auto && isPortInUse(recorded.getProperty("namingPort"))))) {
+            resolvedPortOffset = Integer.parseInt(recorded.getProperty("portOffset"));
+            namingPort = recorded.getProperty("namingPort");
+            admPort = recorded.getProperty("admPort");
+            debug("Using the recorded ports, offset %d", resolvedPortOffset);
+        } else {
+            try {
+                if (auto && !allocate) {
+                    // Nothing was recorded, so nothing was started with an allocated offset
+                    debug("No recorded ports, using the configured ones");
+                    resolvedPortOffset = 0;
+                } else {
+                    resolvedPortOffset = auto
+                        ? PortOffset.allocate(InetAddress.getByName(bindAddress),
+                                              new int[] {Integer.parseInt(namingPort), Integer.parseInt(admPort)},
+                                              getLog())
+                        : Integer.parseInt(portOffset.trim());
+                }
+            } catch (UnknownHostException | NumberFormatException e) {
+                throw new MojoExecutionException("Invalid port configuration: " + e.getMessage(), e);
+            }
+            namingPort = Integer.toString(Integer.parseInt(namingPort) + resolvedPortOffset);
+            admPort = Integer.toString(Integer.parseInt(admPort) + resolvedPortOffset);
+            if (allocate) {
+                storePorts();
+            }
+        }
+        if (allocate) {
+            final Properties properties = getProject() != null ? getProject().getProperties() : new Properties();
+            properties.setProperty("jboss.portOffset", Integer.toString(resolvedPortOffset));
+            properties.setProperty("jboss.namingPort", namingPort);
+            properties.setProperty("jboss.admPort", admPort);
+            properties.setProperty("jboss.httpPort", Integer.toString(8080 + resolvedPortOffset));
+            if (resolvedPortOffset != 0) {
+                info("Using port offset %d: naming port %s, ADM port %s", resolvedPortOffset, namingPort, admPort);
+            }
+        }
+    }
+
+    /**
+     * Record the ports for the goals that follow. Nothing is recorded for un-offset ports, which every goal
+     * already uses, and a record left by an earlier server is removed.
+     */
+    private void storePorts()
+        throws MojoExecutionException
+    {
+        final File file = portsFile();
+        if (resolvedPortOffset == 0) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to delete " + file, e);
+            }
+            return;
+        }
+        final Properties properties = new Properties();
+        properties.setProperty("portOffset", Integer.toString(resolvedPortOffset));
+        properties.setProperty("namingPort", namingPort);
+        properties.setProperty("admPort", admPort);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (OutputStream out = new FileOutputStream(file)) {
+                properties.store(out, "Ports of the JBoss started by jboss:start");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + file, e);
+        }
+    }
+
+    /**
+     * The lease on the server, kept next to <code>jbossLock</code>.
+     */
+    protected ServerLease newServerLease() {
+        return new ServerLease(jbossLock.getParentFile(), "run", getLog());
+    }
+
+    /**
+     * Attach to the JBoss listening on <code>namingPort</code> if its fingerprint matches the configuration of
+     * this build, or shut it down if it does not.
+     *
+     * @return true if the running server can be used as is
+     * @throws MojoExecutionException if the server is not one this plugin started
+     */
+    boolean attachToRunningServer()
+        throws MojoExecutionException
+    {
+        if (!isNamingPortInUse()) {
+            return false;
+        }
+        final File fingerprintFile = fingerprintFile();
+        if (!jbossLock.exists() || !fingerprintFile.exists()) {
+            info("JBoss is already running?");
+            throw new MojoExecutionException("There is already a process occupying port " + namingPort
+                                             + " which was not started from " + jbossHome);
+        }
+        final String running;
+        try {
+            running = new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read " + fingerprintFile, e);
+        }
+        if (running.equals(serverFingerprint()) && isStarted(operations(false))) {
+            info("Reusing the JBoss already running on port %s", namingPort);
+            return true;
+        }
+        info("The running JBoss was started with a different configuration, restarting it");
+        stop();
+        if (isNamingPortInUse()) {
+            throw new MojoExecutionException("Unable to stop the JBoss occupying port " + namingPort);
+        }
+        return false;
+    }
+
+    /**
+     * Hash what the running server depends on: the distribution and patches (by identity, not content, as they
+     * come from the local repository), the files in the conf directory of the server, the configured deployments
+     * and the start configuration.
+     */
+    protected String serverFingerprint()
+        throws MojoExecutionException
+    {
+        if (jbossDistributionFile == null) {
+            jbossDistributionFile = resolveArtifact(jbossDistribution).getFile();
+        }
+        final Fingerprint fingerprint = new Fingerprint();
+        final List<File> files = new ArrayList<>();
+        files.add(jbossDistributionFile);
+        files.addAll(patchFiles(jbossPatches, jbossPatchFiles));
+        files.addAll(patchFiles(serverPatches, serverPatchFiles));
+        for (File file : files) {
+            fingerprint.add(file.getAbsolutePath()).add(file.length() + "/" + file.lastModified());
+        }
+        final Path conf = new File(jbossHome, "server/" + serverId + "/conf").toPath();
+        if (Files.isDirectory(conf)) {
+            try (Stream<Path> paths = Files.walk(conf)) {
+                for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    fingerprint.add(conf.relativize(path).toString()).add(path.toFile());
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to fingerprint " + conf, e);
+            }
+        }
+        fingerprint.add("deployments");
+        for (ArtifactDeployData deployment : deployments) {
+            fingerprint.add(deployment.toString());
+        }
+        fingerprint.add("startOptions").add(startOptions)
+                   .add("serverId").add(serverId)
+                   .add("bindAddress").add(bindAddress)
+                   .add("jbossHome").add(jbossHome.getAbsolutePath());
+        if (environments != null) {
+            for (Environment environment : environments) {
+                fingerprint.add(environment.getName()).add(environment.getValue());
+            }
+        }
+        return fingerprint.toHex();
+    }
+
+    /**
+     * Where the fingerprint of the running server is kept, next to <code>jbossLock</code>.
+     */
+    protected File fingerprintFile() {
+        return new File(jbossLock.getParentFile(), "run.fingerprint");
+    }
+
+    private void writeFingerprint()
+        throws MojoExecutionException
+    {
+        final File file = fingerprintFile();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), serverFingerprint().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + file, e);
+        }
+    }
+
+    /**
+     * Where the pids of the JBoss processes are recorded, next to <code>jbossLock</code>: the spawned process
+     * first, then its descendants, of which the JVM behind <code>run.sh</code> is the one that matters. Each pid
+     * is followed by the {@link Processes#startTime(long) start time} of its process, so a pid that has since
+     * been reused by some other process is not taken for JBoss.
+     */
+    protected File pidsFile() {
+        return new File(jbossLock.getParentFile(), "run.pids");
+    }
+
+    /**
+     * Record the spawned JBoss process and the processes it has started so far.
+     */
+    private void recordPids()
+        throws MojoExecutionException
+    {
+        final Process process = jbossProcess;
+        final long pid = process != null ? Processes.pid(process) : -1;
+        if (pid < 0 || !Processes.isSupported()) {
+            return;
+        }
+        final List<Long> pids = new ArrayList<>();
+        pids.add(pid);
+        try {
+            pids.addAll(Processes.descendants(pid));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to find the processes started by JBoss", e);
+        }
+        final List<String> lines = new ArrayList<>();
+        for (long recorded : pids) {
+            final String startTime = Processes.startTime(recorded);
+            lines.add(startTime != null ? recorded + " " + startTime : Long.toString(recorded));
+        }
+        final File file = pidsFile();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), lines, StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + file, e);
+        }
+        debug("Recorded JBoss pids " + lines);
+    }
+
+    /**
+     * @return the recorded pids with their start times, null where none was recorded
+     */
+    private Map<Long, String> loadPids()
+        throws MojoExecutionException
+    {
+        final Map<Long, String> pids = new LinkedHashMap<>();
+        final File file = pidsFile();
+        if (!file.isFile()) {
+            return pids;
+        }
         try {
-            JBossOperations operations = new JBossOperations(connect(false));
-            if (!isNamingPortFree() || isStarted(operations)) {
-                operations.shutDown();
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII)) {
+                final String[] fields = line.trim().split("\\s+");
+                if (!fields[0].isEmpty()) {
+                    pids.put(Long.parseLong(fields[0]), fields.length > 1 ? fields[1] : null);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new MojoExecutionException("Unable to read " + file, e);
+        }
+        return pids;
+    }
+
+    /**
+     * @return those of the recorded pids that still belong to the processes that were recorded
+     */
+    private List<Long> recordedProcessesAlive(final Map<Long, String> recorded) {
+        final List<Long> alive = new ArrayList<>();
+        for (Map.Entry<Long, String> pid : recorded.entrySet()) {
+            if (Processes.isAlive(pid.getKey(), pid.getValue())) {
+                alive.add(pid.getKey());
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * Forget the processes recorded in {@link #pidsFile()} if they have all exited, so that a later stop does
+     * not act on pids that other processes may have been given since.
+     */
+    private void forgetExitedProcesses()
+        throws MojoExecutionException
+    {
+        final File file = pidsFile();
+        if (file.isFile() && Processes.isSupported() && recordedProcessesAlive(loadPids()).isEmpty()) {
+            debug("The JBoss processes recorded in %s have exited", file);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
 
+    /**
+     * Stop the JBoss processes recorded in {@link #pidsFile()}: ask JBoss to shut down through JMX, wait
+     * <code>stopGracePeriod</code> seconds for the processes to exit, then send SIGTERM and at last SIGKILL.
+     *
+     * @return false if no processes were recorded, the caller then has to watch the naming port instead
+     * @throws MojoExecutionException
+     */
+    protected boolean stopRecordedProcesses()
+        throws MojoExecutionException
+    {
+        if (!pidsFile().isFile() || !Processes.isSupported()) {
+            return false;
+        }
+        final Map<Long, String> recorded = loadPids();
+        final List<Long> alive = recordedProcessesAlive(recorded);
+        try {
+            if (alive.isEmpty()) {
+                info("JBoss seems to be already down");
+                return true;
+            }
+            // JBoss is only spawned on a free naming port and exits when it cannot bind it, so while the processes
+            // verified above live, whoever answers on the port is them. Before they bind it the port is free.
+            if (isNamingPortInUse()) {
                 try {
-                    info("Waiting for JBoss to shutdown");
-                    while (isStarted(operations)) {
-                        sleep("Interrupted while waiting for JBoss to stop");
+                    operations(false).shutDown();
+                } catch (MojoExecutionException e) {
+                    warn("cannot shut JBoss down through JMX: %s", e.getMessage());
+                }
+            }
+            info("Waiting for JBoss processes %s to exit", alive);
+            final long grace = TimeUnit.SECONDS.toMillis(stopGracePeriod);
+            if (!Processes.awaitExit(alive, grace)) {
+                warn("JBoss did not exit within %d seconds, sending SIGTERM", stopGracePeriod);
+                signal(alive, "TERM");
+                if (!Processes.awaitExit(alive, grace)) {
+                    warn("JBoss did not exit within %d seconds of SIGTERM, sending SIGKILL", stopGracePeriod);
+                    signal(alive, "KILL");
+                    if (!Processes.awaitExit(alive, grace)) {
+                        throw new MojoExecutionException("JBoss processes " + alive + " survived SIGKILL");
                     }
-                } catch (RuntimeException re) {
                 }
-            } else {
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for JBoss to exit", e);
+        } finally {
+            if (alive.isEmpty() || alive.stream().noneMatch(pid -> Processes.isAlive(pid, recorded.get(pid)))) {
+                evictConnection();
+                //noinspection ResultOfMethodCallIgnored
+                pidsFile().delete();
+            }
+        }
+    }
+
+    private void signal(final List<Long> pids, final String signal) {
+        // Children first, so run.sh does not get to restart or outlive the JVM it waits for
+        for (int i = pids.size() - 1; i >= 0; i--) {
+            Processes.signal(pids.get(i), signal);
+        }
+    }
+
+    @Override
+    protected void collectArtifacts(List<ArtifactData> artifacts) {
+        collectInstallArtifacts(artifacts);
+        super.collectArtifacts(artifacts);
+    }
+
+    /**
+     * Stop the JBoss this goal started, or the one listening on <code>namingPort</code>.
+     */
+    protected void stop() {
+        for (LogCapture capture : captures) {
+            capture.freezeTail();
+        }
+        logScanner = null;
+        try {
+            if (stopRecordedProcesses()) {
+                return;
+            }
+            if (!isNamingPortInUse()) {
                 info("JBoss seems to be already down");
+                return;
+            }
+            JBossOperations operations = operations(false);
+            operations.shutDown();
+
+            info("Waiting for JBoss to shutdown");
+            waitUntil("JBoss to shutdown", () -> !isStarted(operations));
+            evictConnection();
+            waitUntil("JBoss to release port " + namingPort, () -> !isNamingPortInUse());
+        } catch (MojoExecutionException e) {
+            warn("cannot stop jboss: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop ADM Content Services if they are running.
+     *
+     * @throws MojoExecutionException
+     */
+    protected void stoppingAdm() throws MojoExecutionException {
+        if (!shouldStartAdm()) {
+            return;
+        }
+        info("Shutting down ADM Content Services " + isAdmPortRunning());
+        if (!admLock.exists()) {
+            info("lockFile does not exists");
+            if (!isAdmPortRunning()) {
+                info("ADM Content Services are already stopped");
+                return;
+            }
+        }
+        if (isAdmPortRunning()) {
+            List<String> startOpts = new ArrayList<>();
+
+            if (admDistributionFile == null) {
+                if (admDistribution == null) {
+                    throw new MojoExecutionException("Configure admDistribution");
+                }
+                admDistributionFile = resolveArtifact(admDistribution).getFile();
             }
-            while(!isNamingPortFree()) {
-                sleep("Interrupted while waiting for JBoss to stop");
+
+            startOpts.add("-p");
+            startOpts.add(admPort);
+
+            startOpts.add("--stop");
+
+            final String[] params = isWindows()
+                ? createWindowsCommand(ADM_STARTUP_COMMAND, startOpts)
+                : createUnixCommand(ADM_STARTUP_COMMAND, startOpts);
+
+            info("Stop With\n" + arrayToString(params));
+
+            ProcessBuilder pb = new ProcessBuilder(params);
+
+            pb.directory(admHome);
+
+            setupEnvironments(admEnvironments, pb);
+
+            try {
+                Process proc = pb.start();
+                pumpAdmLog(proc, "adm-stop");
+
+                proc.waitFor();
+            } catch (Exception ioe) {
+                throw new MojoExecutionException("Unable to stop ADM Content Services!", ioe);
+            }
+        }
+
+        if (!waitUntil("ADM Content Services to stop", () -> !isPortInUse(admPort) || !isAdmPortRunning())) {
+            throw new MojoExecutionException("timeout waiting for ADM Content Services to stop");
+        }
+
+        if (admLock.exists()) {
+            info("waiting for " + admLock + " to disappear");
+            if (!waitUntil(admLock + " to disappear", () -> !admLock.exists())) {
+                throw new MojoExecutionException("timeout waiting for ADM Content Services to stop");
             }
+        }
+        info("ADM Content Services stopped!");
+    }
+
+    /**
+     * Stop ADM Content Services after a failed start, best effort.
+     */
+    protected void stopAdm() {
+        try {
+            stoppingAdm();
         } catch (MojoExecutionException e) {
-            warn("cannot stop jboss: {}", e.getMessage());
+            warn("cannot stop adm: %s", e.getMessage());
         }
     }
 
-    private boolean isStarted(final JBossOperations operations) {
+    protected boolean isStarted(final JBossOperations operations) {
         try {
             return operations.isStarted();
         } catch (Exception e) {
@@ -169,7 +905,28 @@ public class JBossStartMojo
     protected void startIfNamingPortIsFree()
         throws MojoExecutionException
     {
-        if (!isNamingPortFree()) {
+        spawnIfNamingPortIsFree();
+        awaitJBossStarted();
+    }
+
+    /**
+     * Launch JBoss If <code>namingPort</code> is free, without waiting for it to start.
+     *
+     * @throws MojoExecutionException
+     */
+    protected void spawnIfNamingPortIsFree()
+        throws MojoExecutionException
+    {
+        if (!isNamingPortInUse()) {
+            if (prestageDeployments) {
+                prestageDeployments();
+            }
+
+            final File serverDirectory = new File(jbossHome, "server/" + serverId);
+            if (resolvedPortOffset != 0 || new File(serverDirectory, "conf/jboss-service.xml.orig").exists()) {
+                PortOffset.apply(serverDirectory, resolvedPortOffset, getLog());
+            }
+
             info("Starting JBoss");
 
             List<String> startOpts = new ArrayList<String>();
@@ -200,23 +957,127 @@ public class JBossStartMojo
             setupEnvironments(environments, pb);
 
             try {
+                StartupListener startupListener = newStartupListener();
+                logScanner = failOnLogPatterns ? newLogScanner() : null;
                 Process proc = pb.start();
-                new JBossLogger(proc.getInputStream(), "out", logToConsole).start();
-                new JBossLogger(proc.getErrorStream(), "err", logToConsole).start();
+                jbossProcess = proc;
+                recordPids();
+                if (reuseRunningServer) {
+                    writeFingerprint();
+                }
+                pumpJBossLog(proc, startupListener, logScanner);
             } catch (Exception ioe) {
                 throw new MojoExecutionException("Unable to startIfNamingPortIsFree jboss!", ioe);
             }
         }
+    }
+
+    /**
+     * Copy (or explode) the resolved deployments into the deploy directory, so JBoss deploys them during boot,
+     * and remove what an earlier start staged but is no longer configured.
+     *
+     * @throws MojoExecutionException
+     */
+    private void prestageDeployments()
+        throws MojoExecutionException
+    {
+        final File list = new File(jbossHome, "server/" + serverId + "/data/prestaged.list");
+        final List<String> names = new ArrayList<>();
+        try {
+            for (Artifact artifact : resolveArtifacts(deployments)) {
+                final File deployed = artifact.getFile();
+                stage(deployed);
+                names.add(deployed.getName());
+                prestaged.put(deployed, stagedURL(deployed));
+                info("Pre-staged '%s'", stagedLocation(deployed));
+            }
+            if (list.isFile()) {
+                for (String name : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+                    if (!name.isEmpty() && !names.contains(name)) {
+                        info("Removing stale pre-staged deployment '%s'", name);
+                        FileTrees.delete(stagedLocation(new File(name)).toPath());
+                    }
+                }
+            }
+            Files.createDirectories(list.getParentFile().toPath());
+            Files.write(list.toPath(), names, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to pre-stage deployments", e);
+        }
+    }
 
-        // Wait for jboss to become ready
-        JBossOperations operations = new JBossOperations(connect(true));
-        for (int i = 0; i < retry; i++) {
-            if (operations.isStarted()) {
-                break;
+    /**
+     * Deployments staged before boot only have to be verified, with one batched check, the rest are deployed.
+     */
+    @Override
+    protected void deployAndWait(ArtifactData[] artifacts, boolean deployFile)
+        throws MojoExecutionException, MojoFailureException
+    {
+        if (prestaged.isEmpty()) {
+            super.deployAndWait(artifacts, deployFile);
+            return;
+        }
+        final List<ArtifactData> rest = new ArrayList<>();
+        final Map<URL, File> verify = new LinkedHashMap<>();
+        for (ArtifactData artifact : artifacts) {
+            final File deployed = resolveArtifact(artifact).getFile();
+            final URL url = prestaged.get(deployed);
+            if (url != null) {
+                verify.put(url, deployed);
+            } else {
+                rest.add(artifact);
+            }
+        }
+        if (!verify.isEmpty()) {
+            info("Verifying %d pre-staged deployments", verify.size());
+            final JBossOperations operations = operations(false);
+            waitForDeployments(operations, verify.keySet());
+            recordDeployed(operations, verify);
+        }
+        if (!rest.isEmpty() || (deployFile && file != null)) {
+            super.deployAndWait(rest.toArray(new ArtifactData[0]), deployFile);
+        }
+    }
+
+    /**
+     * Wait for JBoss to become ready: for the startup marker in its log, then for JMX to confirm it, all within
+     * <code>retry</code> times <code>retryWait</code> seconds.
+     *
+     * @throws MojoExecutionException if JBoss failed, exited or did not start in time
+     */
+    protected void awaitJBossStarted()
+        throws MojoExecutionException
+    {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(retry * (long) retryWait);
+        final CountDownLatch latch = jbossStartedLatch;
+        if (latch != null) {
+            info("Waiting for JBoss to log '%s'", startedMarker);
+            try {
+                latch.await(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for JBoss to start", e);
+            }
+            checkForFailures();
+            if (jbossStartupLogged) {
+                info("JBoss reported it has started");
+            } else if (latch.getCount() == 0) {
+                throw new MojoExecutionException("JBoss exited before it was started");
             }
+        }
 
-            sleep("Interrupted while waiting for JBoss to start");
+        // Confirm (or, when the log said nothing, poll) through JMX, in what is left of the time
+        settlePorts();
+        JBossOperations operations = operations(namingPort, true, waiter(remainingMillis(deadline)));
+        if (!waiter(remainingMillis(deadline)).until("JBoss to start", () -> isStarted(operations))) {
+            throw new MojoExecutionException("Timed out waiting for JBoss to start");
         }
+        // By now run.sh has started the JVM that does the work
+        recordPids();
+    }
+
+    private static long remainingMillis(final long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
     }
 
     /**
@@ -226,6 +1087,18 @@ public class JBossStartMojo
      */
     protected void startAdmIfPortIsFree()
         throws MojoExecutionException
+    {
+        spawnAdmIfPortIsFree();
+        awaitAdmStarted();
+    }
+
+    /**
+     * Launch ADM If <code>admPort</code> is free, without waiting for it to start.
+     *
+     * @throws MojoExecutionException
+     */
+    protected void spawnAdmIfPortIsFree()
+        throws MojoExecutionException
     {
         if (!shouldStartAdm()) {
             return;
@@ -304,24 +1177,25 @@ public class JBossStartMojo
             try {
                 info("starting");
                 Process proc = pb.start();
-                new ADMLogger(proc.getInputStream(), "out", logToConsole).start();
-                new ADMLogger(proc.getErrorStream(), "err", logToConsole).start();
-
-                Thread.sleep(2000);
+                pumpAdmLog(proc, "adm");
             } catch (Exception ioe) {
                 throw new MojoExecutionException("Unable to startAdmIfPortIsFree ADM Content Services!", ioe);
             }
         }
+    }
 
-        for (int i = 0; i < retry; i++) {
-            if (isAdmPortRunning()) {
-                break;
-            }
-
-            sleep("Interrupted while waiting for ADM Content Services to start");
+    /**
+     * Wait for ADM to answer on <code>admPort</code>.
+     *
+     * @throws MojoExecutionException
+     */
+    protected void awaitAdmStarted()
+        throws MojoExecutionException
+    {
+        if (!shouldStartAdm()) {
+            return;
         }
-
-        if (!isAdmPortRunning()) {
+        if (!waitUntil("ADM Content Services to start", () -> isPortInUse(admPort) && isAdmPortRunning())) {
             throw new MojoExecutionException("Unable to startAdmIfPortIsFree ADM Content Services!");
         }
     }
@@ -376,54 +1250,110 @@ public class JBossStartMojo
         return commandWithOptions.toArray(new String[0]);
     }
 
-    class JBossLogger extends ProcessLogger {
-
-        JBossLogger(final InputStream stream, final String logName, final boolean log) {
-            super("JBOSS", stream, logName, log);
+    private void pumpJBossLog(final Process proc, final StartupListener startup, final LogScanner scanner) {
+        final List<LogPump.Listener> out = new ArrayList<>();
+        final List<LogPump.Listener> err = new ArrayList<>();
+        out.add(startup);
+        if (scanner != null) {
+            out.add(scanner);
+            err.add(scanner);
         }
+        pumpLog(proc, "JBOSS", "jboss", out, err);
     }
 
-    class ADMLogger extends ProcessLogger {
+    protected void pumpAdmLog(final Process proc, final String captureName) {
+        pumpLog(proc, "ADM", captureName, new ArrayList<>(), new ArrayList<>());
+    }
 
-        ADMLogger(final InputStream stream, final String logName, final boolean log) {
-            super("ADM", stream, logName, log);
+    protected void pumpLog(final Process proc, final String prefix, final String captureName,
+                         final List<LogPump.Listener> out, final List<LogPump.Listener> err)
+    {
+        final Log log = logToConsole ? getLog() : null;
+        if (captureLogs && logCaptureDirectory != null) {
+            final LogCapture capture = new LogCapture(logCaptureDirectory, captureName, compressCapturedLogs,
+                                                      capturedLogMaxSize, capturedLogFiles, failureTailLines,
+                                                      10000, getLog()).start();
+            info("Capturing %s output to %s", prefix, capture.getFile());
+            captures.add(capture);
+            out.add(capture.listener(""));
+            err.add(capture.listener("[err] "));
         }
+        LogPump.get().attach(proc, proc.getInputStream(), log, prefix, "out", out.toArray(new LogPump.Listener[0]));
+        LogPump.get().attach(proc, proc.getErrorStream(), log, prefix, "err", err.toArray(new LogPump.Listener[0]));
     }
 
-    abstract class ProcessLogger
-        extends Thread
+    private LogScanner newLogScanner() {
+        final String[] patterns = logFailurePatterns != null && logFailurePatterns.length > 0
+            ? logFailurePatterns
+            : LogScanner.DEFAULT_PATTERNS;
+        return new LogScanner(patterns, logFailureContext, () -> {
+            jbossStartedLatch.countDown();
+            Waiter.wakeUp();
+        });
+    }
+
+    /**
+     * Abort any wait once JBoss has logged a failure.
+     */
+    @Override
+    protected void checkForFailures()
+        throws MojoExecutionException
     {
-        private final String prefix;
-        private final BufferedReader stream;
-        private final String logName;
-        private final boolean log;
+        final LogScanner scanner = logScanner;
+        if (scanner != null && scanner.hasFailed()) {
+            throw new MojoExecutionException(scanner.failure());
+        }
+    }
 
-        ProcessLogger(final String prefix,
-                      final InputStream stream,
-                      final String logName,
-                      final boolean log) {
-            this.prefix = prefix;
-            this.stream = new BufferedReader(new InputStreamReader(stream));
-            this.logName = logName;
-            this.log = log;
+    /**
+     * Print the last lines captured from each process spawned by this goal, unless they were already on the
+     * console.
+     */
+    protected void printCapturedTails() {
+        if (logToConsole) {
+            return;
         }
+        for (LogCapture capture : captures) {
+            final List<String> tail = capture.tail();
+            if (tail.isEmpty()) {
+                continue;
+            }
+            final StringBuilder message = new StringBuilder();
+            message.append("[JBOSS] Last ").append(tail.size()).append(" lines of ").append(capture.getName())
+                   .append(" output, see ").append(capture.getFile()).append(" for all of it:");
+            for (String line : tail) {
+                message.append(System.lineSeparator()).append(line);
+            }
+            getLog().error(message.toString());
+        }
+    }
 
-        public void run() {
-            String line;
+    /**
+     * Arm {@link #awaitJBossStarted()} for a JBoss about to be spawned.
+     * @return the listener to pump the stdout of that JBoss to
+     */
+    StartupListener newStartupListener() {
+        jbossStartupLogged = false;
+        jbossStartedLatch = new CountDownLatch(1);
+        return new StartupListener();
+    }
 
-            try {
-                while ((line = stream.readLine()) != null) {
-                    if (log) {
-                        info(prefix, logName, line);
-                    }
-                }
-            } catch (IOException ignore) {
+    /**
+     * Releases {@link #awaitJBossStarted()} when the startup marker shows up in JBoss stdout, or when JBoss exits.
+     */
+    class StartupListener implements LogPump.Listener {
+
+        @Override
+        public void onLine(final String line) {
+            if (!jbossStartupLogged && line.contains(startedMarker)) {
+                jbossStartupLogged = true;
+                jbossStartedLatch.countDown();
             }
         }
 
-        private void info(Object... args) {
-            getLog().info(String.format("[%s] -- log(%s) -- %s", args));
+        @Override
+        public void onEnd() {
+            jbossStartedLatch.countDown();
         }
     }
-
 }
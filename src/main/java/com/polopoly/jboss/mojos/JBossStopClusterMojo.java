@@ -0,0 +1,75 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.polopoly.jboss.Threads;
+
+/**
+ * Will stop, all at once, the JBoss nodes started with jboss:start-cluster.
+ *
+ * @goal stop-cluster
+ * @aggregator
+ */
+public class JBossStopClusterMojo extends JBossStopMojo {
+
+    /**
+     * Where the nodes were recorded by the start-cluster goal.
+     *
+     * @parameter default-value="${project.build.directory}/jboss-cluster" expression="${jboss.clusterDirectory}"
+     */
+    protected File clusterDirectory;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final Properties nodes = JBossStartClusterMojo.loadNodes(clusterDirectory);
+        if (nodes.isEmpty()) {
+            info("No cluster recorded in " + clusterDirectory);
+        } else {
+            for (String name : nodes.stringPropertyNames()) {
+                if (!nodes.getProperty(name).trim().matches("\\d+")) {
+                    throw new MojoExecutionException("Invalid naming port " + nodes.getProperty(name) + " recorded for "
+                                                     + name + " in " + clusterDirectory);
+                }
+            }
+            // Every node is reached through the calls of its own naming port, see operations(port, ...)
+            final ExecutorService pool = Threads.newPool("cluster", nodes.size());
+            try {
+                final List<Future<Void>> stopped = new ArrayList<>();
+                for (String name : nodes.stringPropertyNames()) {
+                    final String port = nodes.getProperty(name);
+                    stopped.add(pool.submit(() -> {
+                        stopNode(name, port);
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : stopped) {
+                    await(future);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        stoppingAdm();
+    }
+
+    private void stopNode(final String name, final String port) throws MojoExecutionException {
+        if (!isPortInUse(port)) {
+            info("%s seems to be already down", name);
+            return;
+        }
+        info("Shutting down %s", name);
+        operations(port, false).shutDown();
+        evictConnection(port);
+        if (!waitUntil(name + " to release port " + port, () -> !isPortInUse(port))) {
+            throw new MojoExecutionException("timeout waiting for " + name + " to stop");
+        }
+        info("%s stopped!", name);
+    }
+}
@@ -1,8 +1,5 @@
 package com.polopoly.jboss.mojos;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
@@ -23,131 +20,59 @@ public class JBossStopMojo extends JBossStartMojo {
     protected boolean jbossWaitLock;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
-        stoppingJBoss();
-        stoppingAdm();
-    }
-
-    private void stoppingAdm() throws MojoExecutionException {
-        if (!shouldStartAdm()) {
+        configurePorts(false);
+        if (!sharedServer) {
+            stoppingJBoss();
+            stoppingAdm();
             return;
         }
-        info("Shutting down ADM Content Services " + isAdmPortRunning());
-        if (!admLock.exists()) {
-            info("lockFile does not exists");
-            if (!isAdmPortRunning()) {
-                info("ADM Content Services are already stopped");
-                return;
-            }
-        }
-        if (isAdmPortRunning()) {
-            List<String> startOpts = new ArrayList<>();
-
-            if (admDistributionFile == null) {
-                if (admDistribution == null) {
-                    throw new MojoExecutionException("Configure admDistribution");
-                }
-                admDistributionFile = resolveArtifact(admDistribution).getFile();
-            }
-
-            startOpts.add("-p");
-            startOpts.add(admPort);
-
-            startOpts.add("--stop");
-
-            final String[] params = isWindows()
-                ? createWindowsCommand(ADM_STARTUP_COMMAND, startOpts)
-                : createUnixCommand(ADM_STARTUP_COMMAND, startOpts);
-
-            info("Stop With\n" + arrayToString(params));
-
-            ProcessBuilder pb = new ProcessBuilder(params);
-
-            pb.directory(admHome);
-
-            setupEnvironments(admEnvironments, pb);
-
-            try {
-                Process proc = pb.start();
-                new ADMLogger(proc.getInputStream(), "out", logToConsole).start();
-                new ADMLogger(proc.getErrorStream(), "err", logToConsole).start();
-
-                proc.waitFor();
-            } catch (Exception ioe) {
-                throw new MojoExecutionException("Unable to stop ADM Content Services!", ioe);
+        newServerLease().release(holders -> {
+            if (holders > 0) {
+                info("JBoss is still leased %d time(s), leaving it running", holders);
+            } else {
+                stoppingJBoss();
+                stoppingAdm();
             }
-        }
-
-        int maxRetry = retry;
-        while (isAdmPortRunning()) {
-            if (maxRetry-- <= 0) {
-                throw new MojoExecutionException("timeout waiting for ADM Content Services to stop");
-            }
-            sleep("Interrupted while waiting for ADM Content Services to stop");
-        }
-
-        if (admLock.exists()) {
-            info("waiting for " + admLock + " to disappear");
-            while (admLock.exists()) {
-                if (maxRetry-- <= 0) {
-                    throw new MojoExecutionException("timeout waiting for ADM Content Services to stop");
-                }
-                sleep("Interrupted while waiting for ADM Content Services to stop");
-                debug("admLock exists? " + admLock.exists());
-            }
-        }
-        info("ADM Content Services stopped!");
+            return null;
+        });
     }
 
     private void stoppingJBoss() throws MojoExecutionException {
         info("Shutting down JBoss");
-        JBossOperations operations = new JBossOperations(connect(false));
-        if (!isNamingPortFree() || isStarted(operations)) {
+        if (stopRecordedProcesses()) {
+            //noinspection ResultOfMethodCallIgnored
+            fingerprintFile().delete();
+            info("JBOSS stopped!");
+            return;
+        }
+        if (isNamingPortInUse()) {
+            JBossOperations operations = operations(false);
             operations.shutDown();
 
-            try {
-                info("Waiting for JBoss to shutdown");
-                while (isStarted(operations)) {
-                    sleep("Interrupted while waiting for JBoss to stop");
-                }
-            } catch (RuntimeException ignore) {
-            }
+            info("Waiting for JBoss to shutdown");
+            waitUntil("JBoss to shutdown", () -> !isStarted(operations));
+            evictConnection();
         } else {
             info("JBoss seems to be already down");
         }
-        int maxStopRetry = retry;
-        while(!isNamingPortFree()) {
-            sleep("Interrupted while waiting for JBoss to stop");
-            if (jbossWaitLock && !jbossLock.exists()) {
-                warn("port is still occupied but lock file does not exists anymore, exit.");
-                break;
-            }
-            if (maxStopRetry-- <= 0) {
-                warn("We waited " + retry + " seconds but jboss does not seems to be stopped yet");
-                break;
-            }
+        final boolean released = waitUntil("JBoss to release port " + namingPort,
+                                           () -> !isNamingPortInUse() || (jbossWaitLock && !jbossLock.exists()));
+        if (!released) {
+            warn("We waited " + retry * retryWait + " seconds but jboss does not seems to be stopped yet");
+        } else if (isNamingPortInUse()) {
+            warn("port is still occupied but lock file does not exists anymore, exit.");
         }
         debug("jbossWaitLock -> " + jbossWaitLock);
         if (jbossWaitLock && jbossLock.exists()) {
             info("Waiting for " + jbossLock + " to disappear");
-            int maxRetry = retry;
             debug("jbossLock " + jbossLock.getAbsolutePath() + " exists: " + jbossLock.exists());
-            while (jbossLock.exists()) {
-                if (maxRetry-- <= 0) {
-                    throw new MojoExecutionException("timeout waiting for JBOSS to stop");
-                }
-                sleep("Interrupted while waiting for JBOSS to stop");
-                debug("jbossLock exists? " + jbossLock.exists());
+            if (!waitUntil(jbossLock + " to disappear", () -> !jbossLock.exists())) {
+                throw new MojoExecutionException("timeout waiting for JBOSS to stop");
             }
         }
+        //noinspection ResultOfMethodCallIgnored
+        fingerprintFile().delete();
         info("JBOSS stopped!");
     }
 
-    private boolean isStarted(final JBossOperations operations) {
-        try {
-            return operations.isStarted();
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
 }
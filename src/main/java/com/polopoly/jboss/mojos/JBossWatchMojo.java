@@ -0,0 +1,210 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Will deploy files into a running JBoss instance and keep redeploying them whenever they change, until maven
+ * is interrupted.
+ *
+ * @goal watch
+ * @aggregator
+ */
+public class JBossWatchMojo extends JBossDeployMojo {
+
+    static final String DEFAULT_EXCLUDES = ".*-(sources|test-sources|javadoc|tests)\\.jar";
+
+    /**
+     * Directories, typically module target directories, whose archives are redeployed whenever they change.
+     *
+     * @parameter
+     */
+    protected File[] watchDirectories = new File[0];
+
+    /**
+     * A regular expression for the file names in <code>watchDirectories</code> that are never deployed, by
+     * default the sources, javadoc and test jars built next to the deployable archive.
+     *
+     * @parameter default-value=".*-(sources|test-sources|javadoc|tests)\.jar" expression="${jboss.watch.excludes}"
+     */
+    protected String watchExcludes = DEFAULT_EXCLUDES;
+
+    /**
+     * Milliseconds without further changes before a batch of changes is redeployed.
+     *
+     * @parameter default-value="500" expression="${jboss.watch.debounce}"
+     */
+    protected long watchDebounce;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        info("Deploying artifacts");
+        prefetchArtifacts();
+        deployAndWait();
+
+        Set<Path> watchedFiles = new HashSet<>();
+        if (file != null) {
+            watchedFiles.add(file.toPath().toAbsolutePath());
+        }
+        for (Artifact artifact : resolveArtifacts(deployments)) {
+            watchedFiles.add(artifact.getFile().toPath().toAbsolutePath());
+        }
+        Set<Path> archiveDirectories = new HashSet<>();
+        for (File directory : watchDirectories) {
+            archiveDirectories.add(directory.toPath().toAbsolutePath());
+        }
+        Pattern excludes = excludes();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Set<Path> directories = new HashSet<>(archiveDirectories);
+            for (Path watched : watchedFiles) {
+                directories.add(watched.getParent());
+            }
+            Changes changes = new Changes(watcher, directories, watchedFiles, archiveDirectories, excludes);
+
+            info("Watching %d files and %d directories for changes, press Ctrl-C to stop",
+                 watchedFiles.size(), archiveDirectories.size());
+            while (!Thread.currentThread().isInterrupted()) {
+                // Block for the first change, then collect until things have been quiet for watchDebounce
+                Set<File> changed = new LinkedHashSet<>();
+                changes.collect(watcher.take(), changed);
+                long first = System.nanoTime();
+                for (WatchKey key; (key = watcher.poll(watchDebounce, TimeUnit.MILLISECONDS)) != null; ) {
+                    changes.collect(key, changed);
+                }
+                if (changed.isEmpty()) {
+                    continue;
+                }
+                info("Redeploying %d changed file(s)", changed.size());
+                long start = System.nanoTime();
+                try {
+                    deployFilesAndWait(changed);
+                    long end = System.nanoTime();
+                    info("Redeployed in %d ms (%d ms after the first change)",
+                         TimeUnit.NANOSECONDS.toMillis(end - start), TimeUnit.NANOSECONDS.toMillis(end - first));
+                } catch (MojoExecutionException e) {
+                    warn("Redeploy failed: %s", e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to watch for changes", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            info("Stopped watching");
+        }
+    }
+
+    private Pattern excludes() throws MojoExecutionException {
+        try {
+            return Pattern.compile(watchExcludes != null ? watchExcludes : "");
+        } catch (PatternSyntaxException e) {
+            throw new MojoExecutionException("Invalid watchExcludes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The changes to the watched directories. A watched directory that is deleted, by <code>mvn clean</code> for
+     * one, is watched again as soon as it is created again: its parent directory is watched for that.
+     */
+    static final class Changes {
+        private final WatchService watcher;
+        private final Set<Path> directories;
+        private final Set<Path> watchedFiles;
+        private final Set<Path> archiveDirectories;
+        private final Pattern excludes;
+        private final Map<WatchKey, Path> keys = new HashMap<>();
+
+        Changes(WatchService watcher,
+                Set<Path> directories,
+                Set<Path> watchedFiles,
+                Set<Path> archiveDirectories,
+                Pattern excludes) throws IOException {
+            this.watcher = watcher;
+            this.directories = directories;
+            this.watchedFiles = watchedFiles;
+            this.archiveDirectories = archiveDirectories;
+            this.excludes = excludes;
+            for (Path directory : directories) {
+                watch(directory.getParent());
+                watch(directory);
+            }
+        }
+
+        private boolean watch(Path directory) throws IOException {
+            if (directory == null || !directory.toFile().isDirectory()) {
+                return false;
+            }
+            try {
+                // The same events for all, a directory may be both watched and the parent of a watched one
+                keys.put(directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                            StandardWatchEventKinds.ENTRY_MODIFY), directory);
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Add the files <code>key</code> reports changed, and that are to be deployed, to <code>changed</code>.
+         */
+        void collect(WatchKey key, Set<File> changed) throws IOException {
+            Path directory = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                if (directories.contains(path) && !keys.containsValue(path) && watch(path)) {
+                    // Created again, whatever it got before it was watched is new as well
+                    File[] files = path.toFile().listFiles();
+                    for (File file : files != null ? files : new File[0]) {
+                        addIfDeployed(path, file.toPath(), changed);
+                    }
+                }
+                addIfDeployed(directory, path, changed);
+            }
+            if (!key.reset()) {
+                // The directory is gone, its parent tells when it is back
+                keys.remove(key);
+            }
+        }
+
+        private void addIfDeployed(Path directory, Path path, Set<File> changed) {
+            if (watchedFiles.contains(path)
+                || (archiveDirectories.contains(directory) && isDeployable(path.getFileName().toString(), excludes))) {
+                changed.add(path.toFile());
+            }
+        }
+    }
+
+    /**
+     * Whether a file found in one of <code>watchDirectories</code> is an archive to deploy.
+     */
+    static boolean isDeployable(String fileName, Pattern excludes) {
+        if (excludes.matcher(fileName).matches()) {
+            return false;
+        }
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".war") || name.endsWith(".ear") || name.endsWith(".jar")
+            || name.endsWith(".sar") || name.endsWith(".rar");
+    }
+}
@@ -0,0 +1,68 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeploymentLedgerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordedDeploymentSurvivesStoreAndLoad() throws IOException {
+        final File ledgerFile = new File(folder.getRoot(), "jboss/deployment-ledger.properties");
+        final File deployed = write("app.ear", "v1");
+        final URL url = deployed.toURI().toURL();
+
+        final DeploymentLedger ledger = new DeploymentLedger(ledgerFile);
+        Assert.assertFalse(ledger.isUnchanged(url, deployed, "1000"));
+        ledger.record(url, deployed, "1000");
+        Assert.assertTrue(ledger.isUnchanged(url, deployed, "1000"));
+        ledger.store();
+
+        final DeploymentLedger loaded = new DeploymentLedger(ledgerFile);
+        Assert.assertTrue(loaded.isUnchanged(url, deployed, "1000"));
+    }
+
+    @Test
+    public void testRestartedServerNeedsRedeploy() throws IOException {
+        final File deployed = write("app.ear", "v1");
+        final URL url = deployed.toURI().toURL();
+        final DeploymentLedger ledger = new DeploymentLedger(new File(folder.getRoot(), "ledger.properties"));
+        ledger.record(url, deployed, "1000");
+
+        Assert.assertFalse(ledger.isUnchanged(url, deployed, "2000"));
+        Assert.assertFalse(ledger.isUnchanged(url, deployed, null));
+    }
+
+    @Test
+    public void testChangedContentIsNoticed() throws IOException {
+        final File deployed = write("app.ear", "v1");
+        final URL url = deployed.toURI().toURL();
+        final DeploymentLedger ledger = new DeploymentLedger(new File(folder.getRoot(), "ledger.properties"));
+        ledger.record(url, deployed, "1000");
+
+        // Rebuilt with identical content: new timestamp, same hash
+        Assert.assertTrue(deployed.setLastModified(deployed.lastModified() - 60000));
+        Assert.assertTrue(ledger.isUnchanged(url, deployed, "1000"));
+
+        // Same size, other content
+        Files.write(deployed.toPath(), "v2".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(deployed.setLastModified(deployed.lastModified() - 120000));
+        Assert.assertFalse(ledger.isUnchanged(url, deployed, "1000"));
+    }
+
+    private File write(final String name, final String content) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,72 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InstallCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesToTheInstallationNeverReachTheCache() throws Exception {
+        final File cacheDirectory = folder.newFolder("cache");
+        final File home = folder.newFolder("home");
+        final InstallCache cache = new InstallCache(cacheDirectory, new SystemStreamLog());
+        cache.install("key", home, directory -> {
+            try {
+                new ZipExtractor(1).extract(zip("dist.zip", "lib/a.jar", "cached", "conf/a.xml", "cached"),
+                                            directory);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        final File cached = new File(cacheDirectory, "key/lib/a.jar");
+        Assert.assertEquals("cached", read(new File(home, "lib/a.jar")));
+
+        // A reinstall and an incremental sync over the materialised tree
+        new ZipExtractor(2).extract(zip("reinstall.zip", "lib/a.jar", "reinstalled"), home);
+        Assert.assertEquals("reinstalled", read(new File(home, "lib/a.jar")));
+        new ZipSync(new ZipExtractor(2)).sync(zip("sync.zip", "lib/a.jar", "synced!"), home,
+                                              new File(home, ZipManifest.FILE_NAME), name -> false);
+        Assert.assertEquals("synced!", read(new File(home, "lib/a.jar")));
+
+        // And an in place write into another materialisation after breaking its links
+        final File other = folder.newFolder("other");
+        cache.install("key", other, directory -> Assert.fail("already cached"));
+        FileTrees.breakLinks(other.toPath());
+        try (FileOutputStream out = new FileOutputStream(new File(other, "lib/a.jar"))) {
+            out.write("in place".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assert.assertEquals("cached", read(cached));
+        Assert.assertEquals("cached", read(new File(cacheDirectory, "key/conf/a.xml")));
+    }
+
+    private File zip(final String name, final String... entries) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package com.polopoly.jboss;
+
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JBossOperationsTest {
+
+    @Test
+    public void testHangingCallTimesOut() {
+        final MBeanServerConnection server = server((method, args) -> {
+            Thread.sleep(10000);
+            return null;
+        });
+        final long start = System.currentTimeMillis();
+        try {
+            new JBossOperations(new AsyncJBossOperations(server).setTimeout("shutdown", 100)).shutDown();
+            Assert.fail("shutdown should have timed out");
+        } catch (MojoExecutionException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("did not answer within 100 ms"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testStatusIsReadInOneCall() throws Exception {
+        final Date started = new Date();
+        final List<String> methods = new ArrayList<>();
+        final MBeanServerConnection server = server((method, args) -> {
+            methods.add(method);
+            Assert.assertArrayEquals(new String[] {"Started", "StartDate"}, (String[]) args[1]);
+            final AttributeList list = new AttributeList();
+            list.add(new Attribute("Started", Boolean.TRUE));
+            list.add(new Attribute("StartDate", started));
+            return list;
+        });
+
+        final JBossOperations.ServerStatus status = new JBossOperations(server).getStatus();
+
+        Assert.assertTrue(status.isStarted());
+        Assert.assertEquals(Long.toString(started.getTime()), status.getStartId());
+        Assert.assertEquals(Collections.singletonList("getAttributes"), methods);
+
+        final Map<String, Object> values = new AsyncJBossOperations(server)
+            .getAttributes("jboss.system:type=Server", "Started", "StartDate").get();
+        Assert.assertEquals(Boolean.TRUE, values.get("Started"));
+        Assert.assertEquals(started, values.get("StartDate"));
+    }
+
+    @Test
+    public void testServerThatHasNotStartedHasNoStartId() {
+        final MBeanServerConnection server = server((method, args) -> {
+            final AttributeList list = new AttributeList();
+            list.add(new Attribute("Started", Boolean.FALSE));
+            list.add(new Attribute("StartDate", new Date()));
+            return list;
+        });
+
+        final JBossOperations operations = new JBossOperations(server);
+
+        Assert.assertFalse(operations.isStarted());
+        Assert.assertNull(operations.getStartId());
+    }
+
+    @Test
+    public void testTimeoutIsNotSpentWaitingBehindOtherCalls() throws Exception {
+        final MBeanServerConnection server = server((method, args) -> {
+            if ("redeploy".equals(args[1])) {
+                Thread.sleep(1000);
+            }
+            return Boolean.TRUE;
+        });
+        final AsyncJBossOperations async = new AsyncJBossOperations(server).setTimeout("isDeployed", 300);
+        final JBossOperations operations = new JBossOperations(async);
+        for (int i = 0; i < 8; i++) {
+            async.invoke("jboss.system:service=MainDeployer", "redeploy", new URL("file:/app" + i + ".ear"));
+        }
+
+        Assert.assertTrue(operations.isDeployed(new URL("file:/app0.ear")));
+    }
+
+    @Test
+    public void testDeployedOfListsAllDeploymentsInOneCall() throws Exception {
+        final List<String> operations = new ArrayList<>();
+        final MBeanServerConnection server = server((method, args) -> {
+            operations.add((String) args[1]);
+            return "<pre>[org.jboss.deployment.DeploymentInfo@1 { url=file:/deploy/a.ear }\n"
+                + "  deployer: EARDeployer\n  status: Deployed\n  state: STARTED\n"
+                + ", org.jboss.deployment.DeploymentInfo@2 { url=file:/deploy/b.war/ }\n"
+                + "  deployer: TomcatDeployer\n  status: Starting\n  state: CREATED\n]</pre>";
+        });
+
+        final List<URL> deployed = new JBossOperations(server).deployedOf(Arrays.asList(
+            new URL("file:/deploy/a.ear"), new URL("file:/deploy/b.war/"), new URL("file:/deploy/c.jar")));
+
+        Assert.assertEquals(Collections.singletonList(new URL("file:/deploy/a.ear")), deployed);
+        Assert.assertEquals(Collections.singletonList("listDeployedAsString"), operations);
+    }
+
+    @Test
+    public void testIncompleteDeploymentsOfOthersAreIgnored() throws Exception {
+        final MBeanServerConnection server = server((method, args) -> {
+            throw new MBeanException(new Exception(
+                "Incomplete Deployment listing:\n--- Incompletely deployed packages ---\n"
+                + "org.jboss.deployment.DeploymentInfo@3 { url=file:/deploy/other.ear }"));
+        });
+        final JBossOperations operations = new JBossOperations(server);
+
+        operations.checkIncompleteDeployments(Collections.singletonList(new URL("file:/deploy/a.ear")));
+        try {
+            operations.checkIncompleteDeployments(Collections.singletonList(new URL("file:/deploy/other.ear")));
+            Assert.fail("other.ear is incomplete");
+        } catch (MojoExecutionException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("other.ear"));
+        }
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+
+    private static MBeanServerConnection server(final Handler handler) {
+        return (MBeanServerConnection) Proxy.newProxyInstance(
+            JBossOperationsTest.class.getClassLoader(), new Class<?>[] {MBeanServerConnection.class},
+            (proxy, method, args) -> handler.handle(method.getName(), args));
+    }
+}
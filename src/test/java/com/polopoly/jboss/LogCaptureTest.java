@@ -0,0 +1,43 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogCaptureTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCapturesAndKeepsTail() throws Exception {
+        final File directory = folder.newFolder("logs");
+        final LogCapture capture = new LogCapture(directory, "jboss", false, 0, 3, 2, 100, new SystemStreamLog())
+            .start();
+        final LogPump.Listener out = capture.listener("");
+        final LogPump.Listener err = capture.listener("[err] ");
+
+        out.onLine("one");
+        err.onLine("two");
+        out.onLine("three");
+        capture.freezeTail();
+        out.onLine("stopping");
+        out.onEnd();
+        err.onEnd();
+
+        Assert.assertEquals(Arrays.asList("[err] two", "three"), capture.tail());
+        final File file = new File(directory, "jboss.log");
+        for (int i = 0; i < 100 && (!file.exists() || Files.readAllLines(file.toPath()).size() < 4); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(Arrays.asList("one", "[err] two", "three", "stopping"),
+                            Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,38 @@
+package com.polopoly.jboss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class LogPumpTest {
+
+    @Test
+    public void testSplitsLinesAndReportsEnd() throws Exception {
+        Assume.assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch ended = new CountDownLatch(1);
+
+        final Process process = new ProcessBuilder("sh", "-c", "printf 'first\\nsecond\\r\\nlast'").start();
+        LogPump.get().attach(process, process.getInputStream(), null, "TEST", "out", new LogPump.Listener() {
+            @Override
+            public void onLine(final String line) {
+                lines.add(line);
+            }
+
+            @Override
+            public void onEnd() {
+                ended.countDown();
+            }
+        });
+
+        Assert.assertTrue(ended.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("first", "second", "last"), lines);
+    }
+}
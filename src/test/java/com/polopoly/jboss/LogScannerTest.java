@@ -0,0 +1,33 @@
+package com.polopoly.jboss;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogScannerTest {
+
+    @Test
+    public void testFirstHitWithContext() {
+        final AtomicInteger hits = new AtomicInteger();
+        final LogScanner scanner = new LogScanner(LogScanner.DEFAULT_PATTERNS, 1, hits::incrementAndGet);
+
+        scanner.onLine("10:00:00,000 INFO  [Server] Starting");
+        scanner.onLine("10:00:01,000 INFO  [MainDeployer] Deploying app.ear");
+        scanner.onLine("10:00:01,500 ERROR [com.example.App] Cache warmup failed, retrying");
+        Assert.assertFalse(scanner.hasFailed());
+
+        scanner.onLine("org.jboss.deployment.DeploymentException: Could not create deployment");
+        scanner.onLine("\tat org.jboss.deployment.MainDeployer.deploy(MainDeployer.java:1)");
+        scanner.onLine("10:00:02,000 ERROR [URLDeploymentScanner] Incomplete Deployment listing");
+
+        Assert.assertTrue(scanner.hasFailed());
+        Assert.assertEquals(1, hits.get());
+        Assert.assertEquals(String.join(System.lineSeparator(),
+                                        "JBoss logged 'DeploymentException':",
+                                        "10:00:01,500 ERROR [com.example.App] Cache warmup failed, retrying",
+                                        "org.jboss.deployment.DeploymentException: Could not create deployment",
+                                        "\tat org.jboss.deployment.MainDeployer.deploy(MainDeployer.java:1)"),
+                            scanner.failure());
+    }
+}
@@ -0,0 +1,27 @@
+package com.polopoly.jboss;
+
+import java.lang.reflect.Proxy;
+
+import javax.management.MBeanServerConnection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MBeanConnectionsTest {
+
+    @Test
+    public void testHangingConnectionIsEvicted() {
+        final MBeanServerConnection hanging = (MBeanServerConnection) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {MBeanServerConnection.class}, (proxy, method, args) -> {
+                Thread.sleep(10000);
+                return 0;
+            });
+        final String key = MBeanConnections.key("localhost", "61099", null, null);
+        MBeanConnections.put(key, hanging);
+
+        final long start = System.currentTimeMillis();
+        Assert.assertNull(MBeanConnections.get(key, 100));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertNull(MBeanConnections.get(key, 100));
+    }
+}
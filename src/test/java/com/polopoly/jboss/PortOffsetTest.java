@@ -0,0 +1,62 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PortOffsetTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyBindingFilesAreRewritten() throws Exception {
+        final File server = folder.newFolder("default");
+        final File service = write(server, "conf/jboss-service.xml", "<attribute name=\"Port\">1099</attribute>");
+        final File tomcat = write(server, "deploy/jbossweb-tomcat55.sar/server.xml", "<Connector port=\"8080\"/>");
+        final String url = "<connection-url>jdbc:mysql://db.example.com:8080/app</connection-url>";
+        final File datasource = write(server, "deploy/app-ds.xml", url);
+
+        Assert.assertEquals(2, PortOffset.apply(server, 100, new SystemStreamLog()));
+
+        Assert.assertEquals("<attribute name=\"Port\">1199</attribute>", read(service));
+        Assert.assertEquals("<Connector port=\"8180\"/>", read(tomcat));
+        Assert.assertEquals(url, read(datasource));
+
+        // Back to the pristine configuration
+        PortOffset.apply(server, 0, new SystemStreamLog());
+        Assert.assertEquals("<attribute name=\"Port\">1099</attribute>", read(service));
+    }
+
+    @Test
+    public void testShiftsKnownPortsOnly() {
+        final String xml = "<attribute name=\"Port\">1099</attribute>\n"
+            + "<Connector port=\"8080\" redirectPort=\"8443\" maxThreads=\"1099x\"/>\n"
+            + "<attribute name=\"InvokerLocator\">socket://${jboss.bind.address}:3873</attribute>\n"
+            + "<attribute name=\"Timeout\">6000</attribute>";
+
+        Assert.assertEquals("<attribute name=\"Port\">1299</attribute>\n"
+                            + "<Connector port=\"8280\" redirectPort=\"8643\" maxThreads=\"1099x\"/>\n"
+                            + "<attribute name=\"InvokerLocator\">socket://${jboss.bind.address}:4073</attribute>\n"
+                            + "<attribute name=\"Timeout\">6000</attribute>",
+                            PortOffset.shift(xml, 200));
+    }
+
+    private static File write(final File root, final String name, final String content) throws IOException {
+        final File file = new File(root, name);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+package com.polopoly.jboss;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessesTest {
+
+    @Before
+    public void onlyOnUnix() {
+        Assume.assumeTrue(Processes.isSupported());
+    }
+
+    @Test
+    public void testFindsGrandchildAndStopsIt() throws Exception {
+        final Process shell = new ProcessBuilder("sh", "-c", "sleep 30; true").start();
+        try {
+            final long pid = Processes.pid(shell);
+            Assert.assertTrue(pid > 0);
+            Assert.assertTrue(Processes.isAlive(pid));
+
+            List<Long> descendants = Collections.emptyList();
+            for (int i = 0; i < 100 && descendants.isEmpty(); i++) {
+                Thread.sleep(20);
+                descendants = Processes.descendants(pid);
+            }
+            Assert.assertEquals(1, descendants.size());
+
+            final long sleep = descendants.get(0);
+            Assert.assertFalse(Processes.awaitExit(Collections.singletonList(sleep), 50));
+            Assert.assertTrue(Processes.signal(sleep, "TERM"));
+            Assert.assertTrue(Processes.awaitExit(Collections.singletonList(sleep), 5000));
+        } finally {
+            shell.destroy();
+        }
+    }
+
+    @Test
+    public void testReusedPidIsNotTakenForTheRecordedProcess() throws Exception {
+        final Process sleep = new ProcessBuilder("sleep", "30").start();
+        try {
+            final long pid = Processes.pid(sleep);
+            final String startTime = Processes.startTime(pid);
+            Assume.assumeNotNull(startTime);
+
+            Assert.assertTrue(Processes.isAlive(pid, startTime));
+            Assert.assertTrue(Processes.isAlive(pid, null));
+            Assert.assertFalse(Processes.isAlive(pid, startTime + "0"));
+        } finally {
+            sleep.destroy();
+            sleep.waitFor();
+        }
+    }
+}
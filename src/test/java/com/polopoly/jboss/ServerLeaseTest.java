@@ -0,0 +1,39 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ServerLeaseTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLastReleaseSeesNoHolders() throws Exception {
+        final ServerLease lease = new ServerLease(folder.getRoot(), "run", new SystemStreamLog());
+
+        Assert.assertEquals(Integer.valueOf(0), lease.acquire(holders -> holders));
+        Assert.assertEquals(Integer.valueOf(1), lease.acquire(holders -> holders));
+        Assert.assertEquals(Integer.valueOf(1), lease.release(holders -> holders));
+        Assert.assertEquals(Integer.valueOf(0), lease.release(holders -> holders));
+    }
+
+    @Test
+    public void testStaleHoldersAreReclaimed() throws Exception {
+        Assume.assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        final File stale = new File(folder.newFolder("run.holders"), Long.toString(Integer.MAX_VALUE));
+        Files.write(stale.toPath(), "2".getBytes(StandardCharsets.UTF_8));
+        final ServerLease lease = new ServerLease(folder.getRoot(), "run", new SystemStreamLog());
+
+        Assert.assertEquals(Integer.valueOf(0), lease.acquire(holders -> holders));
+        Assert.assertFalse(stale.exists());
+    }
+}
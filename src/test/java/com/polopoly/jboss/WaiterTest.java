@@ -0,0 +1,35 @@
+package com.polopoly.jboss;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WaiterTest {
+
+    @Test
+    public void testReturnsAsSoonAsReady() throws MojoExecutionException {
+        final AtomicInteger attempts = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+
+        final String value = new Waiter(new SystemStreamLog(), 5000, 10, 1000)
+            .poll("value", () -> attempts.incrementAndGet() == 3 ? "ready" : null);
+
+        Assert.assertEquals("ready", value);
+        Assert.assertEquals(3, attempts.get());
+        // 10 ms + 20 ms of backoff, nowhere near a whole second
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testGivesUpAtDeadline() throws MojoExecutionException {
+        final long start = System.currentTimeMillis();
+
+        Assert.assertFalse(new Waiter(new SystemStreamLog(), 200, 10, 50).until("never", () -> false));
+
+        final long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue("waited " + elapsed, elapsed >= 150 && elapsed < 2000);
+    }
+}
@@ -0,0 +1,83 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipExtractorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExtract() throws IOException {
+        final byte[] large = new byte[(int) ZipExtractor.LARGE_ENTRY * 3 + 17];
+        Arrays.fill(large, (byte) 'x');
+        final File archive = zip("dist.zip",
+                                 "bin/", null,
+                                 "bin/run.sh", "#!/bin/sh".getBytes(StandardCharsets.UTF_8),
+                                 "server/default/lib/big.jar", large,
+                                 "server/default/conf/jboss-service.xml", "<server/>".getBytes(StandardCharsets.UTF_8));
+        final File target = folder.newFolder("target");
+
+        new ZipExtractor(4).extract(archive, target);
+
+        Assert.assertTrue(new File(target, "bin").isDirectory());
+        Assert.assertEquals("#!/bin/sh", read(new File(target, "bin/run.sh")));
+        Assert.assertEquals("<server/>", read(new File(target, "server/default/conf/jboss-service.xml")));
+        Assert.assertArrayEquals(large, Files.readAllBytes(new File(target, "server/default/lib/big.jar").toPath()));
+    }
+
+    @Test
+    public void testExistingFilesAreReplacedNotTruncated() throws IOException {
+        final File target = folder.newFolder("target");
+        final File jar = new File(target, "lib/a.jar");
+        new ZipExtractor(1).extract(zip("v1.zip", "lib/a.jar", bytes("v1")), target);
+        final File link = new File(folder.getRoot(), "a.jar");
+        Files.createLink(link.toPath(), jar.toPath());
+
+        new ZipExtractor(1).extract(zip("v2.zip", "lib/a.jar", bytes("version2")), target);
+
+        Assert.assertEquals("version2", read(jar));
+        Assert.assertEquals("v1", read(link));
+        Assert.assertArrayEquals(new String[] {"a.jar"}, new File(target, "lib").list());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectEntriesOutsideTarget() throws IOException {
+        final File archive = zip("evil.zip", "../evil.txt", "boo".getBytes(StandardCharsets.UTF_8));
+        new ZipExtractor(2).extract(archive, folder.newFolder("target"));
+    }
+
+    private File zip(final String name, final Object... entries) throws IOException {
+        final File file = folder.newFile(name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry((String) entries[i]));
+                if (entries[i + 1] != null) {
+                    out.write((byte[]) entries[i + 1]);
+                }
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipOverlayTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOverlayWritesLastWriterOnce() throws IOException {
+        final File dist = zip("dist.zip",
+                              "bin/run.sh", "dist",
+                              "server/default/conf/log4j.xml", "dist");
+        final File patch = zip("patch.zip", "bin/run.sh", "patch");
+        final File serverPatch = zip("server-patch.zip", "conf/log4j.xml", "server-patch");
+        final File target = folder.newFolder("target");
+
+        final ZipManifest manifest = new ZipOverlay(new ZipExtractor(2))
+            .add(dist, "")
+            .add(patch, "")
+            .add(serverPatch, "server/default")
+            .apply(target, null);
+
+        Assert.assertEquals("patch", read(new File(target, "bin/run.sh")));
+        Assert.assertEquals("server-patch", read(new File(target, "server/default/conf/log4j.xml")));
+        Assert.assertEquals(2, manifest.size());
+        Assert.assertEquals(5, manifest.get("bin/run.sh").size);
+
+        // Nothing changed, so a reinstall over the same tree must not touch any file
+        final File runSh = new File(target, "bin/run.sh");
+        Assert.assertTrue(runSh.setLastModified(1000L));
+        new ZipOverlay(new ZipExtractor(2)).add(dist, "").add(patch, "").add(serverPatch, "server/default")
+                                           .apply(target, manifest);
+        Assert.assertEquals(1000L, runSh.lastModified());
+    }
+
+    @Test
+    public void testReinstallRestoresFilesEditedToTheSameSize() throws IOException {
+        final File dist = zip("dist.zip", "server/default/conf/jboss-service.xml", "<port>1099</port>");
+        final File target = folder.newFolder("target");
+        final ZipManifest manifest = new ZipOverlay(new ZipExtractor(1)).add(dist, "").apply(target, null);
+        final File config = new File(target, "server/default/conf/jboss-service.xml");
+        Files.write(config.toPath(), "<port>1199</port>".getBytes(StandardCharsets.UTF_8));
+
+        new ZipOverlay(new ZipExtractor(1)).add(dist, "").apply(target, manifest);
+
+        Assert.assertEquals("<port>1099</port>", read(config));
+    }
+
+    private File zip(final String name, final String... entries) throws IOException {
+        final File file = folder.newFile(name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.polopoly.jboss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipSyncTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyChangedEntriesAreWritten() throws IOException {
+        final File target = folder.newFolder("adm");
+        final File manifest = new File(target, ZipManifest.FILE_NAME);
+        final ZipSync sync = new ZipSync(new ZipExtractor(2));
+
+        sync.sync(zip("v1.zip", "lib/a.jar", "a1", "lib/b.jar", "b1", "conf/x.yml", "x1"),
+                  target, manifest, name -> name.startsWith("lib/"));
+
+        final ZipSync.Result result = sync.sync(zip("v2.zip", "lib/a.jar", "a1", "lib/c.jar", "c2"),
+                                                target, manifest, name -> name.startsWith("lib/"));
+
+        Assert.assertEquals(Collections.singletonList("lib/c.jar"), result.written);
+        Assert.assertEquals(Collections.singletonList("lib/b.jar"), result.deleted);
+        Assert.assertFalse(new File(target, "lib/b.jar").exists());
+        Assert.assertTrue(new File(target, "conf/x.yml").exists());
+        Assert.assertEquals("c2", read(new File(target, "lib/c.jar")));
+    }
+
+    @Test
+    public void testUnchangedArchiveWritesNothing() throws IOException {
+        final File target = folder.newFolder("adm");
+        final File manifest = new File(target, ZipManifest.FILE_NAME);
+        final File archive = zip("v1.zip", "lib/a.jar", "a1", "bin/run.sh", "run");
+        final ZipSync sync = new ZipSync(new ZipExtractor(2));
+
+        sync.sync(archive, target, manifest, name -> true);
+        Assert.assertTrue(sync.sync(archive, target, manifest, name -> true).isUnchanged());
+
+        Assert.assertTrue(new File(target, "lib/a.jar").delete());
+        Assert.assertEquals(Arrays.asList("lib/a.jar"), sync.sync(archive, target, manifest, name -> true).written);
+    }
+
+    @Test
+    public void testFilesChangedOnDiskAreRestoredWhateverTheirSize() throws IOException {
+        final File target = folder.newFolder("adm");
+        final File manifest = new File(target, ZipManifest.FILE_NAME);
+        final File archive = zip("v1.zip", "lib/a.jar", "a1", "conf/port", "8090");
+        final ZipSync sync = new ZipSync(new ZipExtractor(2));
+        sync.sync(archive, target, manifest, name -> true);
+
+        // A patch applied after the install, of the same size as the original
+        Files.write(new File(target, "conf/port").toPath(), "8091".getBytes(StandardCharsets.UTF_8));
+
+        final ZipSync.Result result = sync.sync(archive, target, manifest, name -> true);
+        Assert.assertEquals(Collections.singletonList("conf/port"), result.written);
+        Assert.assertEquals("8090", read(new File(target, "conf/port")));
+    }
+
+    private File zip(final String name, final String... entries) throws IOException {
+        final File file = folder.newFile(name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.management.MBeanServerConnection;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.polopoly.jboss.JBossOperations;
+
+public class JBossDeployMojoTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    final JBossDeployMojo target = new JBossDeployMojo() {
+        {
+            serverId = "default";
+        }
+    };
+
+    @Test
+    public void testExplodedUrlIsTheSameBeforeAndAfterTheFirstDeploy() throws Exception {
+        target.jbossHome = folder.getRoot();
+        target.explodedDeployments = true;
+        final File archive = new File("app.war");
+
+        final URL first = target.stagedURL(archive);
+        Assert.assertTrue(first.toString(), first.getPath().endsWith("/deploy/app.war/"));
+
+        Assert.assertTrue(new File(folder.getRoot(), "server/default/deploy/app.war").mkdirs());
+        Assert.assertEquals(first, target.stagedURL(archive));
+    }
+
+    @Test
+    public void testCopiedUrlHasNoTrailingSlash() throws Exception {
+        target.jbossHome = folder.getRoot();
+        target.prestageDeployments = true;
+
+        Assert.assertTrue(target.stagedURL(new File("app.ear")).getPath().endsWith("/deploy/app.ear"));
+    }
+
+    @Test
+    public void testChangedExplodedDeploymentTouchesTheDescriptorOfItsType() throws Exception {
+        Assert.assertEquals("META-INF/ejb-jar.xml", JBossDeployMojo.watchedDescriptor("app.jar"));
+        Assert.assertEquals("META-INF/jboss-service.xml", JBossDeployMojo.watchedDescriptor("app.sar"));
+        Assert.assertEquals("META-INF/ra.xml", JBossDeployMojo.watchedDescriptor("app.rar"));
+        Assert.assertNull(JBossDeployMojo.watchedDescriptor("app.zip"));
+
+        target.jbossHome = folder.newFolder("jboss");
+        target.explodedDeployments = true;
+        final File archive = zip("app.sar", "META-INF/jboss-service.xml", "<server/>", "a.class", "v1");
+        Assert.assertTrue(target.stage(archive));
+        final File descriptor = new File(target.stagedLocation(archive), "META-INF/jboss-service.xml");
+        Assert.assertTrue(descriptor.setLastModified(1000L));
+
+        zip("app.sar", "META-INF/jboss-service.xml", "<server/>", "a.class", "v2");
+        Assert.assertTrue(target.stage(archive));
+
+        Assert.assertTrue(descriptor.lastModified() > 1000L);
+    }
+
+    @Test
+    public void testChangedExplodedDeploymentWithoutDescriptorIsRedeployedDirectly() throws Exception {
+        target.jbossHome = folder.newFolder("jboss");
+        target.explodedDeployments = true;
+        final File archive = zip("app.jar", "a.class", "v1");
+        Assert.assertTrue(target.stage(archive));
+        final List<String> operations = new ArrayList<>();
+        final MBeanServerConnection server = (MBeanServerConnection) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {MBeanServerConnection.class}, (proxy, method, args) -> {
+                operations.add((String) args[1]);
+                return "isDeployed".equals(args[1]) ? Boolean.TRUE : null;
+            });
+
+        target.redeployStaged(new JBossOperations(server), archive, target.stagedURL(archive));
+
+        Assert.assertEquals("redeploy", operations.get(operations.size() - 1));
+        Assert.assertFalse(operations.contains("scan"));
+    }
+
+    @Test
+    public void testRecordedPortsOfAnOffsetServerAreUsed() throws Exception {
+        final JBossDeployMojo deploy = new JBossDeployMojo() {
+            {
+                namingPort = "1099";
+                admPort = "8090";
+                jbossLock = new File(folder.getRoot(), "tmp/run.pid");
+            }
+
+            @Override
+            public String toString() {
+                settlePorts();
+                return namingPort + " " + admPort;
+            }
+        };
+        Assert.assertTrue(new File(folder.getRoot(), "tmp").mkdirs());
+        Files.write(new File(folder.getRoot(), "tmp/ports.properties").toPath(),
+                    "portOffset=100\nnamingPort=1199\nadmPort=8190\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        Assert.assertEquals("1199 8190", deploy.toString());
+    }
+
+    private File zip(final String name, final String... entries) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,106 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JBossInstallMojoTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFailedJBossInstallFailsTheGoalAndIsNotMarkedInstalled() throws Exception {
+        final JBossInstallMojo target = newInstall();
+        target.parallelExtraction = false;
+        target.jbossPatchFiles = new File[] { new File(folder.getRoot(), "missing-patch.zip") };
+
+        try {
+            target.installAll();
+            Assert.fail("A failing install must fail the goal");
+        } catch (MojoExecutionException e) {
+            // expected
+        }
+
+        Assert.assertFalse(target.isInstalled());
+        Assert.assertFalse(new File(target.jbossHome, "bin").exists());
+        Assert.assertTrue(target.isAdmInstalled());
+    }
+
+    @Test
+    public void testFailedAdmInstallFailsTheGoalAndIsNotMarkedInstalled() throws Exception {
+        final JBossInstallMojo target = newInstall();
+        target.parallelExtraction = false;
+        target.admPatchFiles = new File[] { new File(folder.getRoot(), "missing-patch.zip") };
+
+        try {
+            target.installAll();
+            Assert.fail("A failing install must fail the goal");
+        } catch (MojoExecutionException e) {
+            // expected
+        }
+
+        Assert.assertFalse(target.isAdmInstalled());
+        Assert.assertTrue(target.isInstalled());
+    }
+
+    @Test
+    public void testInstallsBothConcurrently() throws Exception {
+        final JBossInstallMojo target = newInstall();
+
+        target.installAll();
+
+        Assert.assertTrue(target.isInstalled());
+        Assert.assertTrue(target.isAdmInstalled());
+    }
+
+    private JBossInstallMojo newInstall() throws IOException {
+        final String port = String.valueOf(freePort());
+        final JBossInstallMojo target = new JBossInstallMojo() {
+            {
+                serverId = "default";
+                bindAddress = "localhost";
+                admPort = port;
+            }
+        };
+        target.parallelInstall = true;
+        target.parallelExtraction = true;
+        target.jbossHome = new File(folder.getRoot(), "jboss");
+        target.admHome = new File(folder.getRoot(), "adm");
+        target.jbossDistributionFile = zip("jboss.zip",
+                                           "bin/run.sh", "#!/bin/sh",
+                                           "server/default/conf/jboss-service.xml", "<server/>");
+        target.admDistributionFile = zip("adm.zip",
+                                         "bin/run.sh", "#!/bin/sh",
+                                         "lib/adm.jar", "jar");
+        return target;
+    }
+
+    private File zip(final String name, final String... entries) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
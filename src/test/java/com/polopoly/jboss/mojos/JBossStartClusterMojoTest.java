@@ -0,0 +1,61 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.polopoly.jboss.FileTrees;
+
+public class JBossStartClusterMojoTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordedNodesAreLoadedBack() throws MojoExecutionException {
+        final File clusterDirectory = new File(folder.getRoot(), "jboss-cluster");
+        Assert.assertTrue(JBossStartClusterMojo.loadNodes(clusterDirectory).isEmpty());
+
+        JBossStartClusterMojo.storeNodes(clusterDirectory, Arrays.asList(
+            new JBossStartClusterMojo.Node("node1", new File(clusterDirectory, "node1"), "1199"),
+            new JBossStartClusterMojo.Node("node2", new File(clusterDirectory, "node2"), "1299")));
+
+        final Properties nodes = JBossStartClusterMojo.loadNodes(clusterDirectory);
+        Assert.assertEquals(2, nodes.size());
+        Assert.assertEquals("1199", nodes.getProperty("node1"));
+        Assert.assertEquals("1299", nodes.getProperty("node2"));
+    }
+
+    @Test
+    public void testNodesGetTheServerButNotItsState() throws Exception {
+        final Path template = folder.newFolder("jboss").toPath();
+        final Path server = template.resolve("server/default");
+        for (String name : new String[] {"conf/jboss-service.xml", "lib/a.jar", "tmp/x", "data/x", "log/x",
+                                         "work/x", "deploy/log/x"}) {
+            final Path file = server.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, name.getBytes(StandardCharsets.UTF_8));
+        }
+        final Path node = folder.getRoot().toPath().resolve("node1");
+
+        FileTrees.linkOrCopy(template, node, JBossStartClusterMojo.nodeExcludes(server), new SystemStreamLog());
+
+        final Path copy = node.resolve("server/default");
+        Assert.assertTrue(Files.isRegularFile(copy.resolve("conf/jboss-service.xml")));
+        Assert.assertTrue(Files.isRegularFile(copy.resolve("lib/a.jar")));
+        Assert.assertTrue(Files.isRegularFile(copy.resolve("deploy/log/x")));
+        for (String state : new String[] {"tmp", "data", "log", "work"}) {
+            Assert.assertFalse(state, Files.exists(copy.resolve(state)));
+        }
+    }
+}
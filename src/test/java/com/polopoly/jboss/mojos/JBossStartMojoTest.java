@@ -1,10 +1,24 @@
 package com.polopoly.jboss.mojos;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.polopoly.jboss.ArtifactDeployData;
+import com.polopoly.jboss.JBossOperations;
 
 public class JBossStartMojoTest {
 
@@ -45,4 +59,187 @@ public class JBossStartMojoTest {
             "--stop"
         }, params);
     }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPortsAreOnlyRecordedForAnOffset() throws Exception {
+        final JBossStartMojo start = new JBossStartMojo() {
+            {
+                namingPort = "1099";
+                admPort = "8090";
+                bindAddress = "localhost";
+                jbossLock = new File(folder.getRoot(), "tmp/run.pid");
+            }
+        };
+        start.portOffset = "0";
+        start.configurePorts(true);
+        Assert.assertFalse(start.portsFile().exists());
+
+        start.portOffset = "100";
+        start.configurePorts(true);
+        final Properties recorded = new Properties();
+        try (InputStream in = new FileInputStream(start.portsFile())) {
+            recorded.load(in);
+        }
+        Assert.assertEquals("1199", recorded.getProperty("namingPort"));
+    }
+
+    @Test
+    public void testStartupMarkerIsNoticedOnce() throws Exception {
+        final JBossStartMojo start = startWithin(2);
+        final JBossStartMojo.StartupListener listener = start.newStartupListener();
+        listener.onLine("10:00:00,000 INFO  [Server] Starting JBoss");
+        listener.onLine("10:00:09,000 INFO  [Server] JBoss Started in 9s:0ms");
+        // An exit after the marker is no failure to start
+        listener.onEnd();
+
+        final long before = System.currentTimeMillis();
+        try {
+            start.awaitJBossStarted();
+            Assert.fail("nothing listens on the naming port");
+        } catch (MojoExecutionException e) {
+            // The log said started, JMX could not confirm it
+            Assert.assertFalse(e.getMessage(), e.getMessage().contains("exited"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - before < 3500);
+    }
+
+    @Test
+    public void testExitWithoutMarkerFailsAtOnce() throws Exception {
+        final JBossStartMojo start = startWithin(60);
+        final JBossStartMojo.StartupListener listener = start.newStartupListener();
+        listener.onLine("10:00:00,000 INFO  [Server] Starting JBoss");
+        listener.onEnd();
+
+        final long before = System.currentTimeMillis();
+        try {
+            start.awaitJBossStarted();
+            Assert.fail("JBoss exited");
+        } catch (MojoExecutionException e) {
+            Assert.assertEquals("JBoss exited before it was started", e.getMessage());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - before < 5000);
+    }
+
+    @Test
+    public void testLogAndJmxWaitsShareOneDeadline() throws Exception {
+        final JBossStartMojo start = startWithin(2);
+        start.newStartupListener().onLine("10:00:00,000 INFO  [Server] Starting JBoss");
+
+        final long before = System.currentTimeMillis();
+        try {
+            start.awaitJBossStarted();
+            Assert.fail("JBoss never started");
+        } catch (MojoExecutionException expected) {
+        }
+        final long waited = System.currentTimeMillis() - before;
+        Assert.assertTrue(Long.toString(waited), waited >= 1900 && waited < 3500);
+    }
+
+    @Test
+    public void testMatchingFingerprintAttachesToTheRunningServer() throws Exception {
+        final ReusingStart start = new ReusingStart(folder.newFolder("jboss"));
+        start.recordFingerprint();
+
+        Assert.assertTrue(start.attachToRunningServer());
+        Assert.assertFalse(start.stopped);
+    }
+
+    @Test
+    public void testChangedConfigFileStartsANewServer() throws Exception {
+        final ReusingStart start = new ReusingStart(folder.newFolder("jboss"));
+        start.recordFingerprint();
+
+        Files.write(new File(start.jbossHome, "server/default/conf/jboss-service.xml").toPath(),
+                    "<server><mbean/></server>".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertFalse(start.attachToRunningServer());
+        Assert.assertTrue(start.stopped);
+    }
+
+    @Test
+    public void testChangedDeploymentStartsANewServer() throws Exception {
+        final ReusingStart start = new ReusingStart(folder.newFolder("jboss"));
+        start.recordFingerprint();
+
+        final ArtifactDeployData deployment = new ArtifactDeployData();
+        deployment.groupId = "com.example";
+        deployment.artifactId = "app";
+        deployment.version = "1.0";
+        deployment.type = "war";
+        start.deployments = new ArtifactDeployData[] { deployment };
+
+        Assert.assertFalse(start.attachToRunningServer());
+        Assert.assertTrue(start.stopped);
+    }
+
+    /**
+     * A start goal that finds a started JBoss on its naming port, which goes away when stopped.
+     */
+    private class ReusingStart extends JBossStartMojo {
+
+        boolean stopped;
+
+        ReusingStart(final File home) throws IOException {
+            jbossHome = home;
+            jbossLock = new File(home, "tmp/run.pid");
+            serverId = "default";
+            bindAddress = "localhost";
+            namingPort = "1099";
+            reuseRunningServer = true;
+            jbossDistributionFile = folder.newFile();
+            final File conf = new File(home, "server/default/conf");
+            Assert.assertTrue(conf.mkdirs());
+            Files.write(new File(conf, "jboss-service.xml").toPath(), "<server/>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        void recordFingerprint() throws Exception {
+            Files.createDirectories(jbossLock.getParentFile().toPath());
+            Files.write(jbossLock.toPath(), "1".getBytes(StandardCharsets.UTF_8));
+            Files.write(fingerprintFile().toPath(), serverFingerprint().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        protected boolean isNamingPortInUse() {
+            return !stopped;
+        }
+
+        @Override
+        protected JBossOperations operations(final boolean canBeStopped) {
+            return null;
+        }
+
+        @Override
+        protected boolean isStarted(final JBossOperations operations) {
+            return !stopped;
+        }
+
+        @Override
+        protected void stop() {
+            stopped = true;
+        }
+    }
+
+    /**
+     * A start goal that gives JBoss <code>seconds</code> to start, on a naming port nothing listens on.
+     */
+    private JBossStartMojo startWithin(final int seconds) throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        return new JBossStartMojo() {
+            {
+                retry = seconds;
+                retryWait = 1;
+                waitInitialInterval = 50;
+                waitMaxInterval = 200;
+                namingPort = Integer.toString(port);
+                bindAddress = "localhost";
+                startedMarker = "Started in";
+            }
+        };
+    }
 }
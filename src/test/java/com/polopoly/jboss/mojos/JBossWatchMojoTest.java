@@ -0,0 +1,91 @@
+package com.polopoly.jboss.mojos;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JBossWatchMojoTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Pattern excludes = Pattern.compile(JBossWatchMojo.DEFAULT_EXCLUDES);
+
+    @Test
+    public void testClassifierJarsAreNotDeployed() {
+        Assert.assertTrue(JBossWatchMojo.isDeployable("app.war", excludes));
+        Assert.assertTrue(JBossWatchMojo.isDeployable("app-1.0.jar", excludes));
+        Assert.assertFalse(JBossWatchMojo.isDeployable("app-1.0-sources.jar", excludes));
+        Assert.assertFalse(JBossWatchMojo.isDeployable("app-1.0-javadoc.jar", excludes));
+        Assert.assertFalse(JBossWatchMojo.isDeployable("app-1.0-tests.jar", excludes));
+        Assert.assertFalse(JBossWatchMojo.isDeployable("app.pom", excludes));
+    }
+
+    @Test
+    public void testCollectsOnlyDeployableChanges() throws Exception {
+        final Path directory = folder.newFolder("target").toPath().toAbsolutePath();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            final JBossWatchMojo.Changes changes = changes(watcher, directory);
+            Files.createFile(directory.resolve("app.war"));
+            Files.createFile(directory.resolve("app-sources.jar"));
+
+            Assert.assertEquals(Collections.singleton(directory.resolve("app.war").toFile()),
+                                collect(watcher, changes));
+        }
+    }
+
+    @Test
+    public void testDirectoryDeletedByACleanIsWatchedAgain() throws Exception {
+        final Path directory = folder.newFolder("module", "target").toPath().toAbsolutePath();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            final JBossWatchMojo.Changes changes = changes(watcher, directory);
+
+            Files.delete(directory);
+            collect(watcher, changes);
+            Files.createDirectory(directory);
+            Files.createFile(directory.resolve("app.war"));
+            final Set<File> changed = collect(watcher, changes);
+            Files.createFile(directory.resolve("app.ear"));
+            changed.addAll(collect(watcher, changes));
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(directory.resolve("app.war").toFile(),
+                                                            directory.resolve("app.ear").toFile())),
+                                changed);
+        }
+    }
+
+    private JBossWatchMojo.Changes changes(final WatchService watcher, final Path directory) throws Exception {
+        return new JBossWatchMojo.Changes(watcher, Collections.singleton(directory), Collections.emptySet(),
+                                          Collections.singleton(directory), excludes);
+    }
+
+    /**
+     * Collect what the watcher reports until it has been quiet for a while.
+     */
+    private static Set<File> collect(final WatchService watcher, final JBossWatchMojo.Changes changes)
+        throws Exception
+    {
+        final Set<File> changed = new LinkedHashSet<>();
+        WatchKey key = watcher.poll(10, TimeUnit.SECONDS);
+        while (key != null) {
+            changes.collect(key, changed);
+            key = watcher.poll(500, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+}